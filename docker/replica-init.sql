@@ -0,0 +1,7 @@
+CHANGE MASTER TO
+    MASTER_HOST = 'mysqldb-user-service',
+    MASTER_USER = 'root',
+    MASTER_PASSWORD = 'root',
+    MASTER_CONNECT_RETRY = 5,
+    MASTER_USE_GTID = slave_pos;
+START SLAVE;
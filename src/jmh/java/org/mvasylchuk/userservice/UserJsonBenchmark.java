@@ -0,0 +1,51 @@
+package org.mvasylchuk.userservice;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the birthday search response, with the ObjectMapper defaults Spring Boot uses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserJsonBenchmark {
+    @Param({"1", "100", "1000"})
+    private int size;
+
+    private ObjectWriter writer;
+    private BaseResponse<List<UserDto>> response;
+
+    @Setup
+    public void setUp() {
+        writer = Jackson2ObjectMapperBuilder.json().build().writer();
+        List<UserDto> users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            users.add(new UserDto((long) i,
+                    "email" + i + "@test.com",
+                    "firstName" + i,
+                    "lastName" + i,
+                    LocalDate.of(1990, 1, 1).plusDays(i),
+                    "address " + i,
+                    "+123456789098",
+                    0L));
+        }
+        response = new BaseResponse<>(users, null);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return writer.writeValueAsBytes(response);
+    }
+}
@@ -0,0 +1,55 @@
+package org.mvasylchuk.userservice;
+
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity and request to {@link UserDto} mapping done on every create, read and update.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserMappingBenchmark {
+    private UserEntity entity;
+    private CreateUserRequest request;
+
+    @Setup
+    public void setUp() {
+        entity = new UserEntity(1L,
+                "email@test.com",
+                "firstName",
+                "lastName",
+                LocalDate.of(1990, 1, 1),
+                "address",
+                "+123456789098");
+        entity.setVersion(3L);
+        request = new CreateUserRequest("email@test.com",
+                "firstName",
+                "lastName",
+                LocalDate.of(1990, 1, 1),
+                "address",
+                "+123456789098");
+    }
+
+    @Benchmark
+    public UserDto entityToDto() {
+        return UserMapper.toDto(entity);
+    }
+
+    @Benchmark
+    public UserDto requestToDto() {
+        return UserMapper.toDto(1L, request, 3L);
+    }
+
+    @Benchmark
+    public UserEntity requestToEntity() {
+        return UserMapper.toEntity(request);
+    }
+}
@@ -0,0 +1,56 @@
+package org.mvasylchuk.userservice;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PATCH body handling: reading the body into {@link UpdateUserRequest}, where {@code address} and
+ * {@code phoneNumber} are absent, explicitly null or set, and deciding which columns to update.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserPatchBenchmark {
+    @Param({
+            "{\"firstName\":\"firstName\"}",
+            "{\"firstName\":\"firstName\",\"address\":null,\"phoneNumber\":null}",
+            "{\"firstName\":\"firstName\",\"address\":\"address\",\"phoneNumber\":\"+123456789098\"}"
+    })
+    private String body;
+
+    private ObjectReader reader;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        reader = Jackson2ObjectMapperBuilder.json().build().readerFor(UpdateUserRequest.class);
+        bytes = body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public UpdateUserRequest read() throws IOException {
+        return reader.readValue(bytes);
+    }
+
+    @Benchmark
+    public void readAndApply(Blackhole blackhole) throws IOException {
+        UpdateUserRequest request = reader.readValue(bytes);
+        // the column selection of UserRepositoryCustomImpl#updateUserFields
+        blackhole.consume(request.getEmail() != null);
+        blackhole.consume(request.getFirstName() != null);
+        blackhole.consume(request.getLastName() != null);
+        blackhole.consume(request.getBirthDate() != null);
+        blackhole.consume(UserRepositoryCustomImpl.isPresent(request.getAddress()) ? request.getAddress().get() : null);
+        blackhole.consume(UserRepositoryCustomImpl.isPresent(request.getPhoneNumber()) ? request.getPhoneNumber().get() : null);
+    }
+}
@@ -0,0 +1,77 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bean validation of the create and update bodies, for valid bodies and for bodies with one violation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserValidationBenchmark {
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private CreateUserRequest validCreate;
+    private CreateUserRequest invalidCreate;
+    private UpdateUserRequest validUpdate;
+    private UpdateUserRequest invalidUpdate;
+
+    @Setup
+    public void setUp() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        validCreate = new CreateUserRequest("email@test.com",
+                "firstName",
+                "lastName",
+                LocalDate.of(1990, 1, 1),
+                "address",
+                "+123456789098");
+        invalidCreate = new CreateUserRequest("not an email",
+                "firstName",
+                "lastName",
+                LocalDate.of(1990, 1, 1),
+                "address",
+                "+123456789098");
+        validUpdate = new UpdateUserRequest(null, "firstName", null, null, Optional.of("address"), null);
+        invalidUpdate = new UpdateUserRequest(null, "", null, null, Optional.of("address"), null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CreateUserRequest>> validCreateRequest() {
+        return validator.validate(validCreate);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<CreateUserRequest>> invalidCreateRequest() {
+        return validator.validate(invalidCreate);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<UpdateUserRequest>> validUpdateRequest() {
+        return validator.validate(validUpdate);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<UpdateUserRequest>> invalidUpdateRequest() {
+        return validator.validate(invalidUpdate);
+    }
+}
@@ -0,0 +1,109 @@
+package org.mvasylchuk.userservice;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Birthday search response in the encodings of {@link UserWireFormatConfiguration}, with and without the gzip
+ * compression of {@code server.compression}. Bytes on the wire are printed once per trial, e.g.
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="UserWireFormatBenchmark -p size=1000"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserWireFormatBenchmark {
+    @Param({"100", "1000"})
+    private int size;
+    @Param({"json", "cbor", "smile"})
+    private String format;
+    @Param({"none", "gzip"})
+    private String compression;
+
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private BaseResponse<List<UserDto>> response;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper mapper = new Jackson2ObjectMapperBuilder()
+                .factory(factory())
+                // ISO dates, as Spring Boot writes them
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        writer = mapper.writer();
+        reader = mapper.readerFor(Response.class);
+        List<UserDto> users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            users.add(new UserDto((long) i,
+                    "email" + i + "@test.com",
+                    "firstName" + i,
+                    "lastName" + i,
+                    LocalDate.of(1990, 1, 1).plusDays(i),
+                    "address " + i,
+                    "+123456789098",
+                    0L));
+        }
+        response = new BaseResponse<>(users, null);
+        encoded = serialize();
+        System.out.println();
+        System.out.println(format + "/" + compression + ", " + size + " users: " + encoded.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = compression.equals("gzip") ? new GZIPOutputStream(bytes) : bytes) {
+            writer.writeValue(out, response);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Response deserialize() throws IOException {
+        InputStream bytes = new ByteArrayInputStream(encoded);
+        try (InputStream in = compression.equals("gzip") ? new GZIPInputStream(bytes) : bytes) {
+            return reader.readValue(in);
+        }
+    }
+
+    private JsonFactory factory() {
+        return switch (format) {
+            case "json" -> new JsonFactory();
+            case "cbor" -> new CBORFactory();
+            case "smile" -> new SmileFactory();
+            default -> throw new IllegalArgumentException(format);
+        };
+    }
+
+    /**
+     * {@link BaseResponse} as a client reads it.
+     */
+    public static class Response {
+        public List<UserDto> data;
+        public String errorMessage;
+    }
+}
@@ -0,0 +1,266 @@
+package org.mvasylchuk.userservice;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model load generator shared by the load tests: requests are dispatched at a fixed rate from a pool of
+ * {@code concurrency} client threads and their latency is measured from the time they were scheduled, not sent, so a
+ * saturated service is not hidden by the generator waiting for it.
+ */
+class LoadGenerator implements AutoCloseable {
+    static final String DEFAULT_MIX = "create=10,get=30,put=10,patch=15,search=30,delete=5";
+    static final LocalDate FIRST_BIRTH_DATE = LocalDate.of(1950, 1, 1);
+    static final int BIRTH_DATE_DAYS = 20_000;
+
+    private static final String DATABASE = "user-service-load";
+    private static final int SEED_CHUNK = 100_000;
+
+    private final int port;
+    private final long seededUsers;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final ExecutorService executor;
+    private final AtomicLong createdUsers = new AtomicLong();
+
+    LoadGenerator(int port, long seededUsers, int concurrency, ObjectMapper objectMapper) {
+        this.port = port;
+        this.seededUsers = seededUsers;
+        this.objectMapper = objectMapper;
+        this.executor = Executors.newFixedThreadPool(concurrency);
+    }
+
+    static DB startDatabase() throws ManagedProcessException {
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+        config.setPort(0);
+        if ("root".equals(System.getProperty("user.name"))) {
+            // mariadbd refuses to start as root unless told to, e.g. in CI containers
+            config.addArg("--user=root");
+        }
+        DB db = DB.newEmbeddedDB(config.build());
+        db.start();
+        return db;
+    }
+
+    /**
+     * The database is created by the driver rather than {@link DB#createDB}, which needs the mariadb command line
+     * client and its libraries.
+     */
+    static String url(DB db) {
+        return "jdbc:mariadb://localhost:" + db.getConfiguration().getPort() + "/" + DATABASE + "?createDatabaseIfNotExist=true";
+    }
+
+    /**
+     * Inserts users 1..n with set-based statements over the sequence engine, emails are {@code user<id>@load.test}.
+     */
+    static void seed(JdbcTemplate jdbcTemplate, long users) {
+        for (long start = 1; start <= users; start += SEED_CHUNK) {
+            long end = Math.min(start + SEED_CHUNK - 1, users);
+            jdbcTemplate.update("INSERT INTO users (id, email, first_name, last_name, birth_date, address, phone_number) " +
+                    "SELECT seq, CONCAT('user', seq, '@load.test'), CONCAT('first', seq), CONCAT('last', seq), " +
+                    "DATE_ADD(?, INTERVAL seq MOD " + BIRTH_DATE_DAYS + " DAY), CONCAT('Street ', seq), '+123456789098' " +
+                    "FROM seq_" + start + "_to_" + end, FIRST_BIRTH_DATE);
+        }
+        // ids allocated by the application start after the seeded ones
+        jdbcTemplate.queryForObject("SELECT SETVAL(user_id_seq, " + (users + UserEntity.ID_ALLOCATION_SIZE) + ")", Long.class);
+        jdbcTemplate.execute("ANALYZE TABLE users");
+    }
+
+    Map<Operation, Stats> run(long rate, Duration duration, Map<Operation, Integer> mix) throws InterruptedException {
+        Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+        mix.keySet().forEach(operation -> stats.put(operation, new Stats()));
+        List<Operation> weighted = new ArrayList<>();
+        mix.forEach((operation, weight) -> weighted.addAll(Collections.nCopies(weight, operation)));
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        List<Future<?>> requests = new ArrayList<>();
+        for (long scheduled = start; scheduled < end; scheduled += interval) {
+            long delay = scheduled - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            Operation operation = weighted.get(ThreadLocalRandom.current().nextInt(weighted.size()));
+            long scheduledAt = scheduled;
+            requests.add(executor.submit(() -> send(operation, scheduledAt, stats.get(operation))));
+        }
+        for (Future<?> request : requests) {
+            try {
+                request.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void send(Operation operation, long scheduledAt, Stats stats) {
+        try {
+            HttpResponse<Void> response = httpClient.send(request(operation), HttpResponse.BodyHandlers.discarding());
+            stats.record(System.nanoTime() - scheduledAt, response.statusCode());
+        } catch (IOException e) {
+            stats.record(System.nanoTime() - scheduledAt, 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private HttpRequest request(Operation operation) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long id = random.nextLong(1, seededUsers + 1);
+        return switch (operation) {
+            case CREATE -> json("/api/users", "POST",
+                    user("load" + createdUsers.incrementAndGet() + "-" + random.nextLong(Long.MAX_VALUE) + "@load.test", random));
+            case GET -> HttpRequest.newBuilder(uri("/api/users/" + id)).GET().build();
+            case PUT -> json("/api/users/" + id, "PUT", user("user" + id + "@load.test", random));
+            case PATCH -> json("/api/users/" + id, "PATCH", Map.of("firstName", "patched" + random.nextInt(1000)));
+            case SEARCH -> {
+                LocalDate from = FIRST_BIRTH_DATE.plusDays(random.nextInt(BIRTH_DATE_DAYS));
+                yield HttpRequest.newBuilder(uri("/api/users/page?limit=100&from=" + from + "&to=" + from.plusDays(30)))
+                        .GET()
+                        .build();
+            }
+            case DELETE -> HttpRequest.newBuilder(uri("/api/users/" + id)).DELETE().build();
+        };
+    }
+
+    private HttpRequest json(String path, String method, Object body) throws IOException {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static Map<String, Object> user(String email, ThreadLocalRandom random) {
+        Map<String, Object> user = new LinkedHashMap<>();
+        user.put("email", email);
+        user.put("firstName", "first" + random.nextInt(1000));
+        user.put("lastName", "last" + random.nextInt(1000));
+        user.put("birthDate", FIRST_BIRTH_DATE.plusDays(random.nextInt(BIRTH_DATE_DAYS)).toString());
+        user.put("address", "Street " + random.nextInt(1000));
+        user.put("phoneNumber", "+123456789098");
+        return user;
+    }
+
+    static Map<String, Object> report(Map<Operation, Stats> stats, Duration duration) {
+        Stats total = new Stats();
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        stats.forEach((operation, operationStats) -> {
+            endpoints.put(operation.endpoint, operationStats.report(duration));
+            total.add(operationStats);
+        });
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("total", total.report(duration));
+        report.put("endpoints", endpoints);
+        return report;
+    }
+
+    static Duration duration(String property, String defaultValue) {
+        String value = System.getProperty(property, defaultValue);
+        return value.startsWith("P") || value.startsWith("p") ? Duration.parse(value) : Duration.parse("PT" + value);
+    }
+
+    static Map<Operation, Integer> mix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] weight = entry.trim().split("=");
+            weights.put(Operation.valueOf(weight[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(weight[1].trim()));
+        }
+        return weights;
+    }
+
+    enum Operation {
+        CREATE("POST /api/users"),
+        GET("GET /api/users/{id}"),
+        PUT("PUT /api/users/{id}"),
+        PATCH("PATCH /api/users/{id}"),
+        SEARCH("GET /api/users/page"),
+        DELETE("DELETE /api/users/{id}");
+
+        private final String endpoint;
+
+        Operation(String endpoint) {
+            this.endpoint = endpoint;
+        }
+    }
+
+    /**
+     * Latency histogram and outcome counts of one endpoint. Rejected are 4xx answers, such as a user deleted earlier
+     * in the run, errors are 5xx answers and failed connections.
+     */
+    static class Stats {
+        private final Histogram latency = new ConcurrentHistogram(3);
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+
+        void record(long nanos, int status) {
+            latency.recordValue(nanos);
+            if (status >= 200 && status < 400) {
+                succeeded.incrementAndGet();
+            } else if (status >= 400 && status < 500) {
+                rejected.incrementAndGet();
+            } else {
+                errors.incrementAndGet();
+            }
+        }
+
+        void add(Stats other) {
+            latency.add(other.latency);
+            succeeded.addAndGet(other.succeeded.get());
+            rejected.addAndGet(other.rejected.get());
+            errors.addAndGet(other.errors.get());
+        }
+
+        Map<String, Object> report(Duration duration) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("requests", latency.getTotalCount());
+            report.put("succeeded", succeeded.get());
+            report.put("rejected", rejected.get());
+            report.put("errors", errors.get());
+            report.put("throughputPerSecond", latency.getTotalCount() / (duration.toMillis() / 1000.0));
+            report.put("p50Millis", millis(latency.getValueAtPercentile(50)));
+            report.put("p95Millis", millis(latency.getValueAtPercentile(95)));
+            report.put("p99Millis", millis(latency.getValueAtPercentile(99)));
+            report.put("p999Millis", millis(latency.getValueAtPercentile(99.9)));
+            report.put("maxMillis", millis(latency.getMaxValue()));
+            return report;
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.mvasylchuk.userservice;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariadb4j.DB;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Heap taken by {@link UserBirthdayIndex} per million users in both modes, and birthday search latency through SQL,
+ * the ids mode and the full mode, over the same random ranges of an embedded MariaDB seeded by {@link LoadGenerator}.
+ * <p>
+ * Run with {@code mvn -Ploadtest test -Dtest=UserBirthdayIndexLoadTest}. System properties:
+ * <ul>
+ *     <li>{@code loadtest.users} - seeded users, default 1000000</li>
+ *     <li>{@code loadtest.searches} - searches per path, default 2000</li>
+ *     <li>{@code loadtest.rangeDays} - days in a searched range, default 7</li>
+ *     <li>{@code loadtest.report} - JSON report file, default {@code target/loadtest-birthday-index-report.json}</li>
+ * </ul>
+ */
+class UserBirthdayIndexLoadTest {
+    private static DB db;
+
+    @BeforeAll
+    static void startDatabase() throws ManagedProcessException {
+        db = LoadGenerator.startDatabase();
+    }
+
+    @AfterAll
+    static void stopDatabase() throws ManagedProcessException {
+        db.stop();
+    }
+
+    @Test
+    void indexVersusSql() throws Exception {
+        long users = Long.getLong("loadtest.users", 1_000_000);
+        int searches = Integer.getInteger("loadtest.searches", 2000);
+        int rangeDays = Integer.getInteger("loadtest.rangeDays", 7);
+        File reportFile = new File(System.getProperty("loadtest.report", "target/loadtest-birthday-index-report.json"));
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(UserServiceApplication.class)
+                .properties("spring.main.web-application-type=none",
+                        "spring.datasource.url=" + LoadGenerator.url(db),
+                        "spring.datasource.username=root",
+                        "spring.datasource.password=")
+                .run()) {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            jdbcTemplate.execute("TRUNCATE TABLE users");
+            jdbcTemplate.execute("TRUNCATE TABLE user_changes");
+            LoadGenerator.seed(jdbcTemplate, users);
+            UserService userService = context.getBean(UserService.class);
+            TransactionTemplate readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+            readOnly.setReadOnly(true);
+
+            Map<String, Object> memory = new LinkedHashMap<>();
+            long heap = usedHeap();
+            UserBirthdayIndex ids = load(context, "ids");
+            long idsHeap = usedHeap();
+            UserBirthdayIndex full = load(context, "full");
+            long fullHeap = usedHeap();
+            memory.put("idsArrayBytesPerMillionUsers", ids.getArrayBytes() * 1_000_000 / users);
+            memory.put("idsHeapBytesPerMillionUsers", (idsHeap - heap) * 1_000_000 / users);
+            memory.put("fullHeapBytesPerMillionUsers", (fullHeap - idsHeap) * 1_000_000 / users);
+
+            Map<String, Supplier<List<UserDto>>> paths = new LinkedHashMap<>();
+            LocalDate[] range = new LocalDate[2];
+            paths.put("sql", () -> readOnly.execute(status -> search(userService, range[0], range[1])));
+            paths.put("ids", () -> readOnly.execute(status -> ids.searchUsersByBirthday(range[0], range[1])));
+            paths.put("full", () -> full.searchUsersByBirthday(range[0], range[1]));
+
+            range[0] = LoadGenerator.FIRST_BIRTH_DATE.plusDays(LoadGenerator.BIRTH_DATE_DAYS / 2);
+            range[1] = range[0].plusDays(rangeDays - 1);
+            // the SQL path does not order its results
+            Set<UserDto> expected = Set.copyOf(paths.get("sql").get());
+            paths.forEach((path, search) -> assertEquals(expected, Set.copyOf(search.get()), path));
+
+            Map<String, Object> latency = new LinkedHashMap<>();
+            long found = 0;
+            for (Map.Entry<String, Supplier<List<UserDto>>> path : paths.entrySet()) {
+                LoadGenerator.Stats stats = new LoadGenerator.Stats();
+                long start = System.nanoTime();
+                for (int i = 0; i < searches; i++) {
+                    range[0] = LoadGenerator.FIRST_BIRTH_DATE.plusDays(ThreadLocalRandom.current().nextInt(LoadGenerator.BIRTH_DATE_DAYS));
+                    range[1] = range[0].plusDays(rangeDays - 1);
+                    long searchStart = System.nanoTime();
+                    found += path.getValue().get().size();
+                    stats.record(System.nanoTime() - searchStart, 200);
+                }
+                latency.put(path.getKey(), stats.report(Duration.ofNanos(System.nanoTime() - start)));
+            }
+            ids.close();
+            full.close();
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("memory", memory);
+            report.put("latency", latency);
+            report.put("settings", Map.of("users", users,
+                    "searches", searches,
+                    "rangeDays", rangeDays,
+                    "averageUsersFound", found / (paths.size() * searches)));
+            report.put("finishedAt", Instant.now().toString());
+
+            ObjectMapper objectMapper = new ObjectMapper();
+            reportFile.getParentFile().mkdirs();
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+            System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        }
+    }
+
+    /**
+     * An index of its own, in addition to the disabled one of the context, that reads the change feed rarely.
+     */
+    private static UserBirthdayIndex load(ConfigurableApplicationContext context, String mode) throws InterruptedException {
+        UserBirthdayIndex index = new UserBirthdayIndex(true, mode, Duration.ofHours(1), 100_000, 1000, Duration.ofSeconds(2),
+                context.getBean(DataSource.class),
+                context.getBean(UserRepository.class),
+                context.getBean(UserChangeService.class));
+        index.start();
+        while (!index.isReady()) {
+            Thread.sleep(100);
+        }
+        return index;
+    }
+
+    private static List<UserDto> search(UserService userService, LocalDate from, LocalDate to) {
+        try {
+            return userService.searchUsersByBirthday(from, to);
+        } catch (UserServiceException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
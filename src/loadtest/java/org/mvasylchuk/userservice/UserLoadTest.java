@@ -0,0 +1,92 @@
+package org.mvasylchuk.userservice;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariadb4j.DB;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Drives a mix of create, get, PUT, PATCH, search and delete requests at a fixed rate against the application
+ * started on an embedded MariaDB seeded with synthetic users, see {@link LoadGenerator}.
+ * <p>
+ * Run with {@code mvn -Ploadtest test}. System properties:
+ * <ul>
+ *     <li>{@code loadtest.users} - seeded users, default 1000000</li>
+ *     <li>{@code loadtest.rate} - requests per second, default 500</li>
+ *     <li>{@code loadtest.duration} / {@code loadtest.warmup} - ISO-8601 or {@code 60s} style, default 60s / 10s</li>
+ *     <li>{@code loadtest.concurrency} - max requests in flight, default 200</li>
+ *     <li>{@code loadtest.mix} - operation weights, default {@code create=10,get=30,put=10,patch=15,search=30,delete=5}</li>
+ *     <li>{@code loadtest.report} - JSON report file, default {@code target/loadtest-report.json}</li>
+ * </ul>
+ * Application properties can be overridden the same way, e.g. {@code -Dspring.threads.virtual.enabled=true}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class UserLoadTest {
+    private static DB db;
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws ManagedProcessException {
+        db = LoadGenerator.startDatabase();
+        registry.add("spring.datasource.url", () -> LoadGenerator.url(db));
+        registry.add("spring.datasource.username", () -> "root");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws ManagedProcessException {
+        db.stop();
+    }
+
+    @Test
+    void load() throws Exception {
+        long users = Long.getLong("loadtest.users", 1_000_000);
+        long rate = Long.getLong("loadtest.rate", 500);
+        Duration duration = LoadGenerator.duration("loadtest.duration", "60s");
+        Duration warmup = LoadGenerator.duration("loadtest.warmup", "10s");
+        int concurrency = Integer.getInteger("loadtest.concurrency", 200);
+        Map<LoadGenerator.Operation, Integer> mix = LoadGenerator.mix(System.getProperty("loadtest.mix", LoadGenerator.DEFAULT_MIX));
+        File reportFile = new File(System.getProperty("loadtest.report", "target/loadtest-report.json"));
+
+        long seedStart = System.nanoTime();
+        LoadGenerator.seed(jdbcTemplate, users);
+        Duration seedTime = Duration.ofNanos(System.nanoTime() - seedStart);
+        assertEquals(users, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class));
+
+        try (LoadGenerator generator = new LoadGenerator(port, users, concurrency, objectMapper)) {
+            generator.run(rate, warmup, mix);
+            Map<String, Object> report = LoadGenerator.report(generator.run(rate, duration, mix), duration);
+            report.put("settings", Map.of("users", users,
+                    "rate", rate,
+                    "durationSeconds", duration.toSeconds(),
+                    "warmupSeconds", warmup.toSeconds(),
+                    "concurrency", concurrency,
+                    "mix", mix));
+            report.put("seedSeconds", seedTime.toMillis() / 1000.0);
+            report.put("finishedAt", Instant.now().toString());
+            reportFile.getParentFile().mkdirs();
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+            System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.mvasylchuk.userservice;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariadb4j.DB;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares request handling on Tomcat's platform-thread pool with virtual threads
+ * ({@code spring.threads.virtual.enabled}) at high concurrency. The application is started once per mode against the
+ * same embedded MariaDB, reseeded before each run, and both runs use the same rate, mix and connection pool size.
+ * While the virtual-thread run is going, {@code jdk.VirtualThreadPinned} events are streamed from JFR and the run fails
+ * if any virtual thread blocked while pinned to its carrier.
+ * <p>
+ * Needs Java 21: {@code mvn -Pjava21,loadtest test -Dtest=UserThreadingLoadTest}. Accepts the {@link UserLoadTest}
+ * properties, with defaults of 200000 users, 1000 requests per second and 2000 requests in flight, plus
+ * {@code loadtest.poolSize} - connection pool size, default 50. The report is written to
+ * {@code target/loadtest-threads-report.json}.
+ */
+class UserThreadingLoadTest {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int PINNED_STACK_DEPTH = 8;
+
+    private static DB db;
+
+    @BeforeAll
+    static void startDatabase() throws ManagedProcessException {
+        assumeTrue(Runtime.version().feature() >= 21, "virtual threads need Java 21");
+        db = LoadGenerator.startDatabase();
+    }
+
+    @AfterAll
+    static void stopDatabase() throws ManagedProcessException {
+        if (db != null) {
+            db.stop();
+        }
+    }
+
+    @Test
+    void platformVersusVirtualThreads() throws Exception {
+        long users = Long.getLong("loadtest.users", 200_000);
+        long rate = Long.getLong("loadtest.rate", 1000);
+        Duration duration = LoadGenerator.duration("loadtest.duration", "60s");
+        Duration warmup = LoadGenerator.duration("loadtest.warmup", "10s");
+        int concurrency = Integer.getInteger("loadtest.concurrency", 2000);
+        int poolSize = Integer.getInteger("loadtest.poolSize", 50);
+        Map<LoadGenerator.Operation, Integer> mix = LoadGenerator.mix(System.getProperty("loadtest.mix", LoadGenerator.DEFAULT_MIX));
+        File reportFile = new File(System.getProperty("loadtest.report", "target/loadtest-threads-report.json"));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        Map<String, Long> pinned = new ConcurrentHashMap<>();
+        for (boolean virtual : new boolean[]{false, true}) {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(UserServiceApplication.class)
+                    .properties("server.port=0",
+                            "spring.datasource.url=" + LoadGenerator.url(db),
+                            "spring.datasource.username=root",
+                            "spring.datasource.password=",
+                            "spring.datasource.hikari.maximum-pool-size=" + poolSize,
+                            "spring.threads.virtual.enabled=" + virtual)
+                    .run();
+            try (RecordingStream recording = new RecordingStream()) {
+                JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+                jdbcTemplate.execute("TRUNCATE TABLE users");
+                jdbcTemplate.execute("TRUNCATE TABLE user_changes");
+                LoadGenerator.seed(jdbcTemplate, users);
+
+                recording.enable(PINNED_EVENT).withStackTrace();
+                recording.onEvent(PINNED_EVENT, event -> pinned.merge(stack(event), 1L, Long::sum));
+                recording.startAsync();
+
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+                try (LoadGenerator generator = new LoadGenerator(port, users, concurrency, objectMapper)) {
+                    generator.run(rate, warmup, mix);
+                    report.put(virtual ? "virtual" : "platform",
+                            LoadGenerator.report(generator.run(rate, duration, mix), duration));
+                }
+            } finally {
+                context.close();
+            }
+        }
+        report.put("pinnedVirtualThreads", pinned);
+        report.put("settings", Map.of("users", users,
+                "rate", rate,
+                "durationSeconds", duration.toSeconds(),
+                "warmupSeconds", warmup.toSeconds(),
+                "concurrency", concurrency,
+                "poolSize", poolSize,
+                "mix", mix));
+        report.put("finishedAt", Instant.now().toString());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        reportFile.getParentFile().mkdirs();
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+        System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+
+        assertEquals(Map.of(), pinned, "virtual threads blocked while pinned");
+    }
+
+    private static String stack(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "unknown";
+        }
+        return event.getStackTrace().getFrames().stream()
+                .limit(PINNED_STACK_DEPTH)
+                .map(RecordedFrame::getMethod)
+                .map(method -> method.getType().getName() + "." + method.getName())
+                .collect(Collectors.joining(" < "));
+    }
+}
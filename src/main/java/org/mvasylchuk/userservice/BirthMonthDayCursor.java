@@ -0,0 +1,45 @@
+package org.mvasylchuk.userservice;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+/**
+ * Keyset position in the {@code (birth_month_day, id)} ordering of users, exchanged with clients as an opaque token.
+ * The month-day is the {@code MMDD} number of {@code V8__add_users_birth_month_day.sql}.
+ */
+@Getter
+@AllArgsConstructor
+class BirthMonthDayCursor {
+    private static final String SEPARATOR = ":";
+
+    private final int monthDay;
+    private final long id;
+
+    static int monthDay(LocalDate date) {
+        return date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
+
+    static BirthMonthDayCursor start(int monthDay) {
+        return new BirthMonthDayCursor(monthDay, Long.MIN_VALUE);
+    }
+
+    static BirthMonthDayCursor decode(String token) throws UserServiceException {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separatorIndex = decoded.indexOf(SEPARATOR);
+            return new BirthMonthDayCursor(Integer.parseInt(decoded.substring(0, separatorIndex)),
+                    Long.parseLong(decoded.substring(separatorIndex + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new UserServiceException("Next token is invalid");
+        }
+    }
+
+    String encode() {
+        String raw = monthDay + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
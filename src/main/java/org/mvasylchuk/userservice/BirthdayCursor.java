@@ -0,0 +1,41 @@
+package org.mvasylchuk.userservice;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Keyset position in the {@code (birth_date, id)} ordering of users, exchanged with clients as an opaque token.
+ */
+@Getter
+@AllArgsConstructor
+class BirthdayCursor {
+    private static final String SEPARATOR = ":";
+
+    private final LocalDate birthDate;
+    private final long id;
+
+    static BirthdayCursor start(LocalDate from) {
+        return new BirthdayCursor(from, Long.MIN_VALUE);
+    }
+
+    static BirthdayCursor decode(String token) throws UserServiceException {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separatorIndex = decoded.indexOf(SEPARATOR);
+            return new BirthdayCursor(LocalDate.parse(decoded.substring(0, separatorIndex)),
+                    Long.parseLong(decoded.substring(separatorIndex + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new UserServiceException("Next token is invalid");
+        }
+    }
+
+    String encode() {
+        String raw = birthDate + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,5 +1,9 @@
 package org.mvasylchuk.userservice;
 
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -8,10 +12,17 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
 @RestControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequiredArgsConstructor
 public class ExceptionHandlingController {
+    private static final Logger log = LoggerFactory.getLogger(ExceptionHandlingController.class);
+
+    private final UserRejectionMetrics userRejectionMetrics;
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public BaseResponse<Void> handle(MethodArgumentNotValidException e) {
+        userRejectionMetrics.reject(UserRejectionReason.VALIDATION);
         FieldError fieldError = e.getFieldError();
         return new BaseResponse<>(null, fieldError.getField() + ": " + fieldError.getDefaultMessage());
     }
@@ -19,13 +30,36 @@ public class ExceptionHandlingController {
     @ExceptionHandler(UserServiceException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public BaseResponse<Void> handle(UserServiceException e) {
+        userRejectionMetrics.reject(e.getReason());
+        return new BaseResponse<>(null, e.getMessage());
+    }
+
+    @ExceptionHandler(UserVersionMismatchException.class)
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    public BaseResponse<Void> handle(UserVersionMismatchException e) {
+        userRejectionMetrics.reject(e.getReason());
+        return new BaseResponse<>(null, e.getMessage());
+    }
+
+    @ExceptionHandler(UserServiceBusyException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public BaseResponse<Void> handle(UserServiceBusyException e) {
+        userRejectionMetrics.reject(e.getReason());
+        return new BaseResponse<>(null, e.getMessage());
+    }
+
+    @ExceptionHandler(UserServiceUnsupportedException.class)
+    @ResponseStatus(HttpStatus.NOT_IMPLEMENTED)
+    public BaseResponse<Void> handle(UserServiceUnsupportedException e) {
+        userRejectionMetrics.reject(e.getReason());
         return new BaseResponse<>(null, e.getMessage());
     }
 
     @ExceptionHandler(Exception.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public BaseResponse<Void> handle(Exception e) {
-        System.out.println(e.getMessage());
+        log.error("Unexpected error", e);
+        userRejectionMetrics.error();
         return new BaseResponse<>(null, "Internal error");
     }
 }
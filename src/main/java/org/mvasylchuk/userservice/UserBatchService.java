@@ -0,0 +1,215 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.hibernate.Session;
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.CreateUserResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Creates users in bulk: every item is validated on its own, emails that {@link UserEmailFilter} does not rule out
+ * are checked with one query per chunk and the accepted rows of a chunk are inserted with JDBC batching in a single
+ * transaction. A chunk that fails on insert is retried row by row so that one bad row only fails itself.
+ * <p>
+ * Bulk deletes run as set-based DELETE statements, one transaction per chunk.
+ */
+@Service
+public class UserBatchService {
+    private static final Logger log = LoggerFactory.getLogger(UserBatchService.class);
+
+    static final String DUPLICATE_IN_BATCH_ERROR = "Email is duplicated in the batch";
+    static final String EMPTY_ITEM_ERROR = "User should not be empty";
+    static final String INTERNAL_ERROR = "Internal error";
+
+    private final int minAge;
+    private final int chunkSize;
+    private final int jdbcBatchSize;
+    private final UserRepository userRepository;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final UserCache userCache;
+    private final UserChangeService userChangeService;
+    private final UserEmailFilter userEmailFilter;
+
+    public UserBatchService(@Value("${userService.minAge}") int minAge,
+                            @Value("${userService.batch.chunkSize}") int chunkSize,
+                            @Value("${userService.batch.jdbcBatchSize}") int jdbcBatchSize,
+                            UserRepository userRepository,
+                            Validator validator,
+                            PlatformTransactionManager transactionManager,
+                            EntityManager entityManager,
+                            UserCache userCache,
+                            UserChangeService userChangeService,
+                            UserEmailFilter userEmailFilter) {
+        this.minAge = minAge;
+        this.chunkSize = chunkSize;
+        this.jdbcBatchSize = jdbcBatchSize;
+        this.userRepository = userRepository;
+        this.validator = validator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.entityManager = entityManager;
+        this.userCache = userCache;
+        this.userChangeService = userChangeService;
+        this.userEmailFilter = userEmailFilter;
+    }
+
+    public List<CreateUserResult> createUsers(List<CreateUserRequest> requests) {
+        CreateUserResult[] results = new CreateUserResult[requests.size()];
+        Set<String> batchEmails = new HashSet<>();
+        for (int start = 0; start < requests.size(); start += chunkSize) {
+            createChunk(requests, start, Math.min(start + chunkSize, requests.size()), batchEmails, results);
+        }
+        return Arrays.asList(results);
+    }
+
+    public long deleteUsers(List<Long> ids) {
+        long deleted = 0;
+        for (int start = 0; start < ids.size(); start += chunkSize) {
+            deleted += deleteChunk(ids.subList(start, Math.min(start + chunkSize, ids.size())));
+        }
+        return deleted;
+    }
+
+    public long deleteUsersByBirthday(LocalDate from, LocalDate to) throws UserServiceException {
+        if (from.isAfter(to)) {
+            throw new UserServiceException("From should not exceed to ");
+        }
+
+        long deleted = 0;
+        List<Long> chunk;
+        do {
+            chunk = userRepository.findIdsByBirthDateBetween(from, to, Limit.of(chunkSize));
+            deleted += deleteChunk(chunk);
+        } while (chunk.size() == chunkSize);
+        return deleted;
+    }
+
+    private int deleteChunk(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        int deleted = transactionTemplate.execute(status -> {
+            userChangeService.recordChanges(UserChangeType.DELETED, ids);
+            return userRepository.deleteAllByIds(ids);
+        });
+        userCache.invalidateAll(ids);
+        return deleted;
+    }
+
+    private void createChunk(List<CreateUserRequest> requests, int start, int end, Set<String> batchEmails,
+                             CreateUserResult[] results) {
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            UserServiceException error = validate(requests.get(i));
+            if (error != null) {
+                results[i] = CreateUserResult.failed(error.getReason(), error.getMessage());
+            } else {
+                candidates.add(i);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        Set<String> existingEmails = new HashSet<>();
+        List<String> knownEmails = candidates.stream()
+                .map(i -> requests.get(i).getEmail())
+                .filter(userEmailFilter::mightContain)
+                .toList();
+        if (!knownEmails.isEmpty()) {
+            userRepository.findExistingEmails(knownEmails).forEach(email -> existingEmails.add(normalize(email)));
+        }
+
+        List<Integer> accepted = new ArrayList<>();
+        for (Integer i : candidates) {
+            String email = normalize(requests.get(i).getEmail());
+            if (existingEmails.contains(email)) {
+                results[i] = CreateUserResult.failed(UserRejectionReason.DUPLICATE_EMAIL, UserService.EMAIL_EXISTS_ERROR);
+            } else if (!batchEmails.add(email)) {
+                results[i] = CreateUserResult.failed(UserRejectionReason.DUPLICATE_EMAIL, DUPLICATE_IN_BATCH_ERROR);
+            } else {
+                accepted.add(i);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<UserEntity> saved = insert(accepted.stream().map(requests::get).toList());
+            for (int j = 0; j < accepted.size(); j++) {
+                results[accepted.get(j)] = CreateUserResult.created(saved.get(j).getId());
+            }
+        } catch (DataAccessException e) {
+            for (Integer i : accepted) {
+                results[i] = insertOne(requests.get(i));
+            }
+        }
+    }
+
+    private CreateUserResult insertOne(CreateUserRequest request) {
+        try {
+            return CreateUserResult.created(insert(List.of(request)).get(0).getId());
+        } catch (DataIntegrityViolationException e) {
+            return CreateUserResult.failed(UserRejectionReason.DUPLICATE_EMAIL, UserService.EMAIL_EXISTS_ERROR);
+        } catch (DataAccessException e) {
+            log.error("Inserting a user of a batch failed", e);
+            return CreateUserResult.failed(UserRejectionReason.INTERNAL, INTERNAL_ERROR);
+        }
+    }
+
+    private List<UserEntity> insert(List<CreateUserRequest> requests) {
+        List<UserEntity> inserted = transactionTemplate.execute(status -> {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(jdbcBatchSize);
+            List<UserEntity> saved = userRepository.saveAll(requests.stream()
+                    .map(UserMapper::toEntity)
+                    .toList());
+            userRepository.flush();
+            userChangeService.recordChanges(UserChangeType.CREATED, saved.stream().map(UserEntity::getId).toList());
+            entityManager.clear();
+            return saved;
+        });
+        userCache.invalidateAll(inserted.stream().map(UserEntity::getId).toList());
+        inserted.forEach(user -> userEmailFilter.put(user.getEmail()));
+        return inserted;
+    }
+
+    /**
+     * The rejection of an item that is invalid on its own, or null.
+     */
+    UserServiceException validate(CreateUserRequest request) {
+        if (request == null) {
+            return new UserServiceException(EMPTY_ITEM_ERROR);
+        }
+        Set<ConstraintViolation<CreateUserRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            return new UserServiceException(violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .findFirst()
+                    .get());
+        }
+        if (request.getBirthDate().plusYears(minAge).isAfter(LocalDate.now())) {
+            return new UserServiceException(UserRejectionReason.MIN_AGE, UserService.MIN_AGE_ERROR);
+        }
+        return null;
+    }
+
+    static String normalize(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+}
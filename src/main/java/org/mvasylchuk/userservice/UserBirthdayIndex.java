@@ -0,0 +1,481 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.annotation.PostConstruct;
+import org.mvasylchuk.userservice.dto.UserChangeDto;
+import org.mvasylchuk.userservice.dto.UserChangePage;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-process index of birth dates, enabled with {@code userService.birthdayIndex.enabled}. Birthday searches find the
+ * ids in range by binary search over {@code (epochDay, id)} pairs kept sorted in primitive arrays, 12 bytes per user,
+ * and fetch only those rows by primary key. With {@code userService.birthdayIndex.mode=full} whole users are kept as
+ * well and searches are answered from memory.
+ * <p>
+ * The arrays are loaded on a background thread by streaming {@code users} in the order of its birth date index;
+ * searches go to the database until that is done. Changes made through {@link UserService} are applied at once, and
+ * the change feed is read every {@code userService.birthdayIndex.refreshInterval} for the changes of batches, imports
+ * and other instances. Changes are kept in a sorted set next to the arrays, and merged into new arrays once there are
+ * {@code userService.birthdayIndex.maxPendingChanges} of them.
+ * <p>
+ * Not used in sharded mode.
+ */
+@Component
+public class UserBirthdayIndex implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UserBirthdayIndex.class);
+
+    private static final int FETCH_SIZE = 1000;
+    private static final Comparator<Entry> ORDER = Comparator.<Entry>comparingInt(entry -> entry.day).thenComparingLong(entry -> entry.id);
+
+    private final boolean enabled;
+    private final boolean full;
+    private final Duration refreshInterval;
+    private final int maxPendingChanges;
+    private final int feedPageSize;
+    private final Duration settleTime;
+    private final JdbcTemplate jdbcTemplate;
+    private final UserRepository userRepository;
+    private final UserChangeService userChangeService;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Entry> pending = new HashMap<>();
+    private final NavigableSet<Entry> pendingByDay = new TreeSet<>(ORDER);
+    private final ScheduledExecutorService refresher;
+    private volatile Snapshot snapshot;
+    private long feedPosition;
+
+    public UserBirthdayIndex(@Value("${userService.birthdayIndex.enabled}") boolean enabled,
+                             @Value("${userService.birthdayIndex.mode}") String mode,
+                             @Value("${userService.birthdayIndex.refreshInterval}") Duration refreshInterval,
+                             @Value("${userService.birthdayIndex.maxPendingChanges}") int maxPendingChanges,
+                             @Value("${userService.maxPageSize}") int feedPageSize,
+                             @Value("${userService.changes.settleTime}") Duration settleTime,
+                             DataSource dataSource,
+                             UserRepository userRepository,
+                             UserChangeService userChangeService) {
+        if (!mode.equals("ids") && !mode.equals("full")) {
+            throw new IllegalStateException("userService.birthdayIndex.mode should be ids or full");
+        }
+        this.enabled = enabled;
+        this.full = mode.equals("full");
+        this.refreshInterval = refreshInterval;
+        this.maxPendingChanges = maxPendingChanges;
+        this.feedPageSize = feedPageSize;
+        this.settleTime = settleTime;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.userRepository = userRepository;
+        this.userChangeService = userChangeService;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-birthday-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts loading and refreshing the index when it is enabled.
+     */
+    @PostConstruct
+    void start() {
+        if (enabled) {
+            refresher.scheduleWithFixedDelay(this::refresh, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Whether searches can be served by the index, i.e. it is enabled and loaded.
+     */
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * Users in range, ordered by birth date and id.
+     */
+    public List<UserDto> searchUsersByBirthday(LocalDate from, LocalDate to) {
+        List<UserDto> users = new ArrayList<>();
+        streamUsersByBirthday(from, to, users::add);
+        return users;
+    }
+
+    /**
+     * Up to {@code limit} users in range after the cursor, ordered by birth date and id.
+     */
+    public List<UserDto> findPageByBirthDate(BirthdayCursor cursor, LocalDate to, int limit) {
+        List<UserDto> users = new ArrayList<>(limit);
+        scan(cursor.getBirthDate(), cursor.getId(), to, limit, users::add);
+        return users;
+    }
+
+    public void streamUsersByBirthday(LocalDate from, LocalDate to, Consumer<UserDto> consumer) {
+        scan(from, Long.MIN_VALUE, to, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Passes the users after {@code (afterDate, afterId)} to the consumer, a chunk of index entries at a time. In ids
+     * mode each chunk is fetched by primary key, and rows whose birth date no longer matches their entry are skipped:
+     * the index has not seen their change yet, and returning them at the old position would break the order that
+     * page cursors rely on. The change feed brings them back at the new one.
+     */
+    private void scan(LocalDate afterDate, long afterId, LocalDate to, long limit, Consumer<UserDto> consumer) {
+        int afterDay = (int) afterDate.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        long remaining = limit;
+        while (remaining > 0) {
+            List<Entry> entries = range(afterDay, afterId, toDay, (int) Math.min(remaining, FETCH_SIZE));
+            if (entries.isEmpty()) {
+                return;
+            }
+            for (UserDto user : users(entries)) {
+                consumer.accept(user);
+                remaining--;
+            }
+            Entry last = entries.get(entries.size() - 1);
+            afterDay = last.day;
+            afterId = last.id;
+        }
+    }
+
+    private List<UserDto> users(List<Entry> entries) {
+        if (full) {
+            return entries.stream().map(entry -> entry.user).toList();
+        }
+        Map<Long, UserDto> rows = userRepository.findAllDtosByIds(entries.stream().map(entry -> entry.id).toList())
+                .stream()
+                .collect(Collectors.toMap(UserDto::getId, Function.identity()));
+        List<UserDto> users = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            UserDto user = rows.get(entry.id);
+            if (user != null && user.getBirthDate().toEpochDay() == entry.day) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Up to {@code limit} entries after {@code (afterDay, afterId)} and up to {@code toDay}, merged from the arrays and
+     * the pending changes.
+     */
+    List<Entry> range(int afterDay, long afterId, int toDay, int limit) {
+        List<Entry> entries = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Snapshot snapshot = this.snapshot;
+            int i = snapshot.after(afterDay, afterId);
+            Iterator<Entry> changes = pendingByDay.tailSet(new Entry(afterDay, afterId, 0, null), false).iterator();
+            Entry change = changes.hasNext() ? changes.next() : null;
+            while (entries.size() < limit) {
+                while (i < snapshot.size && pending.containsKey(snapshot.ids[i])) {
+                    i++;
+                }
+                Entry next;
+                if (i < snapshot.size && (change == null || snapshot.compareTo(i, change) < 0)) {
+                    next = snapshot.entry(i++);
+                } else if (change != null) {
+                    next = change;
+                    change = changes.hasNext() ? changes.next() : null;
+                } else {
+                    break;
+                }
+                if (next.day > toDay) {
+                    break;
+                }
+                entries.add(next);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return entries;
+    }
+
+    /**
+     * Applies a created or updated user, after the commit when called in a transaction.
+     */
+    public void put(UserDto user) {
+        if (enabled) {
+            long version = user.getVersion() == null ? 0 : user.getVersion();
+            afterCommit(new Entry((int) user.getBirthDate().toEpochDay(), user.getId(), version, full ? user : null));
+        }
+    }
+
+    /**
+     * Applies a deleted user, after the commit when called in a transaction.
+     */
+    public void remove(Long id) {
+        if (enabled) {
+            afterCommit(new Entry(Integer.MIN_VALUE, id, Long.MAX_VALUE, null));
+        }
+    }
+
+    private void afterCommit(Entry change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(change);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(change);
+            }
+        });
+    }
+
+    /**
+     * Keeps the newer of the change and the pending change of the same user, so that changes read back from the feed
+     * do not undo newer ones made through this instance.
+     */
+    private void apply(Entry change) {
+        lock.writeLock().lock();
+        try {
+            Entry current = pending.get(change.id);
+            if (current != null && current.version > change.version) {
+                return;
+            }
+            if (current != null) {
+                pendingByDay.remove(current);
+            }
+            pending.put(change.id, change);
+            if (!change.isRemoved()) {
+                pendingByDay.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void refresh() {
+        try {
+            if (snapshot == null) {
+                load();
+            }
+            UserChangePage page;
+            do {
+                page = userChangeService.getChanges(feedPosition, feedPageSize, Duration.ZERO);
+                for (UserChangeDto change : page.getChanges()) {
+                    UserDto user = change.getUser();
+                    if (change.getType().equals(UserChangeType.DELETED.name())) {
+                        apply(new Entry(Integer.MIN_VALUE, user.getId(), Long.MAX_VALUE, null));
+                    } else {
+                        apply(new Entry((int) user.getBirthDate().toEpochDay(), user.getId(), user.getVersion(), full ? user : null));
+                    }
+                }
+                feedPosition = page.getNext();
+            } while (!page.getChanges().isEmpty());
+            if (getPendingChanges() >= maxPendingChanges) {
+                compact();
+            }
+        } catch (Exception e) {
+            log.warn("Birthday index refresh failed", e);
+        }
+    }
+
+    /**
+     * Streams the users in {@code (birth_date, id)} order. The feed is replayed from a little before the load started,
+     * as changes still being committed then may be missing from both; replayed changes end in the latest state.
+     */
+    private void load() {
+        feedPosition = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM user_changes " +
+                "WHERE changed_at < CURRENT_TIMESTAMP(6) - INTERVAL ? MICROSECOND", Long.class, settleTime.toNanos() / 1000);
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+        SnapshotBuilder builder = new SnapshotBuilder((int) (count + count / 16 + 16));
+        if (full) {
+            jdbcTemplate.query(UserShardedStore.SELECT_USER + "ORDER BY birth_date, id", (RowCallbackHandler) row ->
+                    builder.add(UserShardedStore.USER.mapRow(row, 0)));
+        } else {
+            jdbcTemplate.query("SELECT id, birth_date FROM users ORDER BY birth_date, id", (RowCallbackHandler) row ->
+                    builder.add((int) row.getObject("birth_date", LocalDate.class).toEpochDay(), row.getLong("id"), null));
+        }
+        snapshot = builder.build();
+    }
+
+    /**
+     * Merges the pending changes into new arrays. The arrays are built from a copy of the changes without holding the
+     * lock, which is only taken to swap them in; changes applied meanwhile stay pending.
+     */
+    synchronized void compact() {
+        Snapshot current;
+        Map<Long, Entry> merged;
+        List<Entry> changes;
+        lock.readLock().lock();
+        try {
+            current = snapshot;
+            merged = new HashMap<>(pending);
+            changes = new ArrayList<>(pendingByDay);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        SnapshotBuilder builder = new SnapshotBuilder(current.size + changes.size());
+        Iterator<Entry> iterator = changes.iterator();
+        Entry change = iterator.hasNext() ? iterator.next() : null;
+        for (int i = 0; i < current.size; i++) {
+            if (merged.containsKey(current.ids[i])) {
+                continue;
+            }
+            while (change != null && current.compareTo(i, change) > 0) {
+                builder.add(change.day, change.id, change.user);
+                change = iterator.hasNext() ? iterator.next() : null;
+            }
+            builder.add(current.days[i], current.ids[i], current.users == null ? null : current.users[i]);
+        }
+        while (change != null) {
+            builder.add(change.day, change.id, change.user);
+            change = iterator.hasNext() ? iterator.next() : null;
+        }
+        Snapshot next = builder.build();
+
+        lock.writeLock().lock();
+        try {
+            snapshot = next;
+            for (Entry entry : merged.values()) {
+                if (pending.remove(entry.id, entry)) {
+                    pendingByDay.remove(entry);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Heap taken by the arrays, without the users of the full mode.
+     */
+    long getArrayBytes() {
+        Snapshot snapshot = this.snapshot;
+        return snapshot == null ? 0 : (long) snapshot.days.length * Integer.BYTES + (long) snapshot.ids.length * Long.BYTES;
+    }
+
+    int getPendingChanges() {
+        lock.readLock().lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * A user in the index, or a removed one when {@code day} is {@link Integer#MIN_VALUE}.
+     */
+    static class Entry {
+        private final int day;
+        private final long id;
+        private final long version;
+        private final UserDto user;
+
+        private Entry(int day, long id, long version, UserDto user) {
+            this.day = day;
+            this.id = id;
+            this.version = version;
+            this.user = user;
+        }
+
+        private boolean isRemoved() {
+            return day == Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Entries sorted by {@code (day, id)} in parallel arrays, never changed once built.
+     */
+    private static class Snapshot {
+        private final int[] days;
+        private final long[] ids;
+        private final UserDto[] users;
+        private final int size;
+
+        private Snapshot(int[] days, long[] ids, UserDto[] users, int size) {
+            this.days = days;
+            this.ids = ids;
+            this.users = users;
+            this.size = size;
+        }
+
+        /**
+         * Index of the first entry after {@code (day, id)}.
+         */
+        private int after(int day, long id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (days[middle] < day || days[middle] == day && ids[middle] <= id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private int compareTo(int i, Entry entry) {
+            int byDay = Integer.compare(days[i], entry.day);
+            return byDay != 0 ? byDay : Long.compare(ids[i], entry.id);
+        }
+
+        private Entry entry(int i) {
+            return new Entry(days[i], ids[i], 0, users == null ? null : users[i]);
+        }
+    }
+
+    private class SnapshotBuilder {
+        private int[] days;
+        private long[] ids;
+        private UserDto[] users;
+        private int size;
+
+        private SnapshotBuilder(int capacity) {
+            this.days = new int[capacity];
+            this.ids = new long[capacity];
+            this.users = full ? new UserDto[capacity] : null;
+        }
+
+        private void add(UserDto user) {
+            add((int) user.getBirthDate().toEpochDay(), user.getId(), user);
+        }
+
+        private void add(int day, long id, UserDto user) {
+            if (size == days.length) {
+                int capacity = days.length + days.length / 2 + 16;
+                days = Arrays.copyOf(days, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                users = users == null ? null : Arrays.copyOf(users, capacity);
+            }
+            days[size] = day;
+            ids[size] = id;
+            if (users != null) {
+                users[size] = user;
+            }
+            size++;
+        }
+
+        private Snapshot build() {
+            return new Snapshot(days, ids, users, size);
+        }
+    }
+}
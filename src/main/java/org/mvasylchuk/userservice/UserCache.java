@@ -0,0 +1,135 @@
+package org.mvasylchuk.userservice;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Size and TTL bounded cache of single-user reads. Absent users are cached as well, for a shorter time.
+ * Hit, miss and eviction counts are published as {@code cache.*} metrics with the tag {@code cache=users}.
+ * <p>
+ * A miss installs an incomplete future and the caller loads the user after that, outside of the cache's locks, so
+ * concurrent readers of the same id wait for one load and no lock is held while a database connection is awaited.
+ * <p>
+ * Writes called in a transaction are applied after its commit, so that a read between the write and the commit cannot
+ * cache the old row for good, and a rolled back transaction leaves the cache alone.
+ */
+@Component
+public class UserCache {
+    private final AsyncCache<Long, Optional<UserDto>> cache;
+
+    public UserCache(@Value("${userService.cache.maximumSize}") long maximumSize,
+                     @Value("${userService.cache.ttl}") Duration ttl,
+                     @Value("${userService.cache.negativeTtl}") Duration negativeTtl,
+                     MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<Long, Optional<UserDto>>() {
+                    @Override
+                    public long expireAfterCreate(Long id, Optional<UserDto> user, long currentTime) {
+                        return (user.isPresent() ? ttl : negativeTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long id, Optional<UserDto> user, long currentTime, long currentDuration) {
+                        return expireAfterCreate(id, user, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long id, Optional<UserDto> user, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "users");
+    }
+
+    public Optional<UserDto> get(Long id, Function<Long, Optional<UserDto>> loader) {
+        CompletableFuture<Optional<UserDto>> loading = new CompletableFuture<>();
+        CompletableFuture<Optional<UserDto>> user = cache.get(id, (key, executor) -> loading);
+        if (user == loading) {
+            try {
+                loading.complete(loader.apply(id));
+            } catch (RuntimeException e) {
+                // failed futures are removed from the cache
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return user.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Like {@link #get}, for all the ids at once: the ids that miss are loaded with one call of the loader, which
+     * should map each of them, absent users to {@link Optional#empty()}.
+     */
+    public Map<Long, Optional<UserDto>> getAll(Set<Long> ids, Function<Set<Long>, Map<Long, Optional<UserDto>>> loader) {
+        CompletableFuture<Map<Long, Optional<UserDto>>> loading = new CompletableFuture<>();
+        Set<Long> missing = new HashSet<>();
+        // called at once for the ids that are neither cached nor being loaded
+        CompletableFuture<Map<Long, Optional<UserDto>>> users = cache.getAll(ids, (keys, executor) -> {
+            missing.addAll(keys);
+            return loading;
+        });
+        if (!missing.isEmpty()) {
+            try {
+                loading.complete(loader.apply(missing));
+            } catch (RuntimeException e) {
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return users.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    public void put(UserDto user) {
+        afterCommit(() -> cache.put(user.getId(), CompletableFuture.completedFuture(Optional.of(user))));
+    }
+
+    public void invalidate(Long id) {
+        afterCommit(() -> cache.synchronous().invalidate(id));
+    }
+
+    public void invalidateAll(Collection<Long> ids) {
+        afterCommit(() -> cache.synchronous().invalidateAll(ids));
+    }
+
+    private static void afterCommit(Runnable write) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                write.run();
+            }
+        });
+    }
+}
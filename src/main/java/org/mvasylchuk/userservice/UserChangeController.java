@@ -0,0 +1,107 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.annotation.PreDestroy;
+import org.mvasylchuk.userservice.dto.UserChangeDto;
+import org.mvasylchuk.userservice.dto.UserChangePage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Feed of user changes. Plain GET is a long-poll: it returns a page of changes as soon as there is one, or an empty
+ * page after {@code wait} seconds. GET with {@code Accept: text/event-stream} keeps sending the changes as
+ * Server-Sent Events with the sequence number as the event id, so a reconnecting client resumes from
+ * {@code Last-Event-ID}.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/api/users/changes")
+public class UserChangeController {
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    private final UserChangeService userChangeService;
+    private final UserShardedStore userShardedStore;
+    private final Duration maxWait;
+    private final Duration streamTimeout;
+    private final ExecutorService streamExecutor;
+
+    public UserChangeController(@Value("${userService.changes.maxWait}") Duration maxWait,
+                                @Value("${userService.changes.streamTimeout}") Duration streamTimeout,
+                                @Value("${userService.changes.maxStreams}") int maxStreams,
+                                UserChangeService userChangeService,
+                                UserShardedStore userShardedStore) {
+        this.userChangeService = userChangeService;
+        this.userShardedStore = userShardedStore;
+        this.maxWait = maxWait;
+        this.streamTimeout = streamTimeout;
+        this.streamExecutor = new ThreadPoolExecutor(0, maxStreams, 60, TimeUnit.SECONDS, new SynchronousQueue<>());
+    }
+
+    @GetMapping
+    public BaseResponse<UserChangePage> poll(@RequestParam(name = "after", defaultValue = "0") long after,
+                                             @RequestParam(name = "limit", defaultValue = "100") int limit,
+                                             @RequestParam(name = "wait", defaultValue = "0") long waitSeconds) throws UserServiceException {
+        userShardedStore.checkSupported("Change feed");
+        return new BaseResponse<>(userChangeService.getChanges(after, limit, Duration.ofSeconds(waitSeconds)), null);
+    }
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam(name = "after", required = false) Long after,
+                             @RequestHeader(name = LAST_EVENT_ID, required = false) Long lastEventId,
+                             @RequestParam(name = "limit", defaultValue = "100") int limit) throws UserServiceException {
+        userShardedStore.checkSupported("Change feed");
+        long from = lastEventId != null ? lastEventId : after != null ? after : 0;
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        AtomicBoolean open = new AtomicBoolean(true);
+        emitter.onCompletion(() -> open.set(false));
+        emitter.onTimeout(() -> open.set(false));
+        emitter.onError(e -> open.set(false));
+        try {
+            streamExecutor.execute(() -> stream(from, limit, emitter, open));
+        } catch (RejectedExecutionException e) {
+            throw new UserServiceBusyException("Too many change streams are open");
+        }
+        return emitter;
+    }
+
+    private void stream(long after, int limit, SseEmitter emitter, AtomicBoolean open) {
+        try {
+            while (open.get() && !Thread.currentThread().isInterrupted()) {
+                UserChangePage page = userChangeService.getChanges(after, limit, maxWait);
+                if (page.getChanges().isEmpty()) {
+                    // detects closed connections while the feed is idle
+                    emitter.send(SseEmitter.event().comment("keep-alive"));
+                    continue;
+                }
+                Set<ResponseBodyEmitter.DataWithMediaType> events = new LinkedHashSet<>();
+                for (UserChangeDto change : page.getChanges()) {
+                    events.addAll(SseEmitter.event()
+                            .id(Long.toString(change.getSequence()))
+                            .name(change.getType())
+                            .data(change, MediaType.APPLICATION_JSON)
+                            .build());
+                }
+                emitter.send(events);
+                after = page.getNext();
+            }
+            emitter.complete();
+        } catch (IOException | UserServiceException | RuntimeException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        streamExecutor.shutdownNow();
+    }
+}
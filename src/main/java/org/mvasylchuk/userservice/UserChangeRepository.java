@@ -0,0 +1,23 @@
+package org.mvasylchuk.userservice;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface UserChangeRepository extends JpaRepository<UserChangeEntity, Long>, UserChangeRepositoryCustom {
+    List<UserChangeEntity> findAllByIdGreaterThanOrderById(Long after, Limit limit);
+
+    /**
+     * Deletes up to {@code limit} of the oldest changes that are older than the retention, by the database clock.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM user_changes WHERE changed_at < CURRENT_TIMESTAMP(6) - INTERVAL :retentionSeconds SECOND " +
+            "ORDER BY id LIMIT :limit", nativeQuery = true)
+    int deleteOlderThan(@Param("retentionSeconds") long retentionSeconds, @Param("limit") int limit);
+}
@@ -0,0 +1,19 @@
+package org.mvasylchuk.userservice;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+public interface UserChangeRepositoryCustom {
+    /**
+     * Locks the users and copies their current rows into the outbox. The rows stay locked until the end of the
+     * transaction, so a concurrent change of the same user gets a later sequence number.
+     *
+     * @return the number of recorded changes, missing users are skipped
+     */
+    int recordChanges(UserChangeType type, Collection<Long> userIds);
+
+    /**
+     * The clock of the database, which sets {@code changed_at}.
+     */
+    LocalDateTime findCurrentTimestamp();
+}
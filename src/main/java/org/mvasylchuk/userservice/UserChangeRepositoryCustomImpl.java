@@ -0,0 +1,54 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+class UserChangeRepositoryCustomImpl implements UserChangeRepositoryCustom {
+    private static final int MAX_ROWS_PER_INSERT = 1000;
+    private static final String INSERT = "INSERT INTO user_changes " +
+            "(type, user_id, email, first_name, last_name, birth_date, address, phone_number, version, changed_at) VALUES ";
+    // changed_at is taken from the database clock, which all instances share
+    private static final String ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP(6))";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int recordChanges(UserChangeType type, Collection<Long> userIds) {
+        // scalar rows are read from the database even when the entities are managed with an older state
+        List<Object[]> users = entityManager.createQuery("select u.id, u.email, u.firstName, u.lastName, u.birthDate, " +
+                        "u.address, u.phoneNumber, u.version from UserEntity u where u.id in :ids order by u.id", Object[].class)
+                .setParameter("ids", userIds)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+
+        // INSERT ... SELECT would reserve auto-increment values in blocks and leave gaps in the feed sequence,
+        // a multi-row INSERT ... VALUES gets exactly as many values as it has rows
+        int recorded = 0;
+        for (int start = 0; start < users.size(); start += MAX_ROWS_PER_INSERT) {
+            List<Object[]> rows = users.subList(start, Math.min(start + MAX_ROWS_PER_INSERT, users.size()));
+            Query insert = entityManager.createNativeQuery(INSERT + String.join(", ", Collections.nCopies(rows.size(), ROW)));
+            int position = 1;
+            for (Object[] row : rows) {
+                insert.setParameter(position++, type.name());
+                for (Object column : row) {
+                    insert.setParameter(position++, column);
+                }
+            }
+            recorded += insert.executeUpdate();
+        }
+        return recorded;
+    }
+
+    @Override
+    public LocalDateTime findCurrentTimestamp() {
+        return (LocalDateTime) entityManager.createNativeQuery("SELECT CURRENT_TIMESTAMP(6)", LocalDateTime.class).getSingleResult();
+    }
+}
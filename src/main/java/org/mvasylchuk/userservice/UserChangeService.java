@@ -0,0 +1,207 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.mvasylchuk.userservice.dto.UserChangeDto;
+import org.mvasylchuk.userservice.dto.UserChangePage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Transactional outbox of user changes. Every create, update and delete copies the user row into
+ * {@code user_changes} in the transaction of the change, and the rows are read back as a feed ordered by their
+ * auto-increment sequence number.
+ * <p>
+ * Sequence numbers are allocated on insert but become visible on commit, so a gap in the feed may be a change that is
+ * still being committed. A page stops before such a gap until the changes after it are older than
+ * {@code userService.changes.settleTime}; gaps left by rolled back transactions are skipped after that. Change times
+ * are taken from the database clock, so that instances with skewed clocks agree on them.
+ * <p>
+ * Changes older than {@code userService.changes.retention} are purged every {@code userService.changes.purgeInterval},
+ * so a consumer that falls further behind than that misses them.
+ */
+@Service
+public class UserChangeService {
+    private static final Logger log = LoggerFactory.getLogger(UserChangeService.class);
+    private static final int PURGE_BATCH_SIZE = 10000;
+
+    private final int maxPageSize;
+    private final Duration maxWait;
+    private final Duration pollInterval;
+    private final Duration settleTime;
+    private final Duration retention;
+    private final Duration purgeInterval;
+    private final UserChangeRepository userChangeRepository;
+    private final ScheduledExecutorService purger;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition committed = lock.newCondition();
+    private long commits;
+
+    public UserChangeService(@Value("${userService.maxPageSize}") int maxPageSize,
+                             @Value("${userService.changes.maxWait}") Duration maxWait,
+                             @Value("${userService.changes.pollInterval}") Duration pollInterval,
+                             @Value("${userService.changes.settleTime}") Duration settleTime,
+                             @Value("${userService.changes.retention}") Duration retention,
+                             @Value("${userService.changes.purgeInterval}") Duration purgeInterval,
+                             UserChangeRepository userChangeRepository) {
+        this.maxPageSize = maxPageSize;
+        this.maxWait = maxWait;
+        this.pollInterval = pollInterval;
+        this.settleTime = settleTime;
+        this.retention = retention;
+        this.purgeInterval = purgeInterval;
+        this.userChangeRepository = userChangeRepository;
+        this.purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-change-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    void startPurging() {
+        purger.scheduleWithFixedDelay(this::purge, purgeInterval.toMillis(), purgeInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopPurging() {
+        purger.shutdownNow();
+    }
+
+    /**
+     * Records the current state of the users. Must be called in the transaction of the change, after inserts and
+     * updates and before deletes.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordChanges(UserChangeType type, Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        userChangeRepository.recordChanges(type, userIds);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                signalCommit();
+            }
+        });
+    }
+
+    /**
+     * Returns up to {@code limit} changes with a sequence number greater than {@code after}. When there are none
+     * yet, waits for them up to {@code wait}; changes committed by other instances are noticed within
+     * {@code userService.changes.pollInterval}.
+     */
+    public UserChangePage getChanges(long after, int limit, Duration wait) throws UserServiceException {
+        if (limit < 1 || limit > maxPageSize) {
+            throw new UserServiceException("Limit should be between 1 and " + maxPageSize);
+        }
+        if (wait.isNegative() || wait.compareTo(maxWait) > 0) {
+            throw new UserServiceException("Wait should be between 0 and " + maxWait.toSeconds() + " seconds");
+        }
+
+        long deadline = System.nanoTime() + wait.toNanos();
+        while (true) {
+            long observedCommits = commits();
+            UserChangePage page = readChanges(after, limit);
+            long remaining = deadline - System.nanoTime();
+            if (!page.getChanges().isEmpty() || remaining <= 0) {
+                return page;
+            }
+            if (!awaitCommit(observedCommits, Math.min(remaining, pollInterval.toNanos()))) {
+                return page;
+            }
+        }
+    }
+
+    private UserChangePage readChanges(long after, int limit) {
+        LocalDateTime settled = null;
+        List<UserChangeDto> changes = new ArrayList<>();
+        long next = after;
+        for (UserChangeEntity change : userChangeRepository.findAllByIdGreaterThanOrderById(after, Limit.of(limit))) {
+            if (change.getId() != next + 1) {
+                if (settled == null) {
+                    settled = userChangeRepository.findCurrentTimestamp().minus(settleTime);
+                }
+                if (change.getChangedAt().isAfter(settled)) {
+                    break;
+                }
+            }
+            changes.add(UserMapper.toDto(change));
+            next = change.getId();
+        }
+        return new UserChangePage(changes, next);
+    }
+
+    /**
+     * Deletes the changes older than the retention, in batches of {@value #PURGE_BATCH_SIZE}.
+     */
+    long purge() {
+        try {
+            long purged = 0;
+            int deleted;
+            do {
+                deleted = userChangeRepository.deleteOlderThan(retention.toSeconds(), PURGE_BATCH_SIZE);
+                purged += deleted;
+            } while (deleted == PURGE_BATCH_SIZE);
+            return purged;
+        } catch (RuntimeException e) {
+            log.warn("User change purge failed", e);
+            return 0;
+        }
+    }
+
+    private long commits() {
+        lock.lock();
+        try {
+            return commits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return {@code false} if the thread was interrupted
+     */
+    private boolean awaitCommit(long observedCommits, long timeoutNanos) {
+        lock.lock();
+        try {
+            if (commits == observedCommits) {
+                committed.await(timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalCommit() {
+        lock.lock();
+        try {
+            commits++;
+            committed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package org.mvasylchuk.userservice;
+
+public enum UserChangeType {
+    CREATED,
+    UPDATED,
+    DELETED
+}
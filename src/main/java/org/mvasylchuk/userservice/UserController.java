@@ -1,34 +1,91 @@
 package org.mvasylchuk.userservice;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.CreateUserResult;
 import org.mvasylchuk.userservice.dto.UpdateUserRequest;
 import org.mvasylchuk.userservice.dto.UserDto;
+import org.mvasylchuk.userservice.dto.UserMultiGetResult;
+import org.mvasylchuk.userservice.dto.UserPage;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.util.List;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/users")
 @RequiredArgsConstructor
 public class UserController {
     private final UserService userService;
+    private final UserBatchService userBatchService;
+    private final UserShardedStore userShardedStore;
+    private final UserRejectionMetrics userRejectionMetrics;
+    private final ObjectMapper objectMapper;
 
     @PostMapping()
     public BaseResponse<UserDto> create(@RequestBody @Valid CreateUserRequest request) throws UserServiceException {
         return new BaseResponse<>(userService.createUser(request), null);
     }
 
+    @PostMapping("/batch")
+    public BaseResponse<List<CreateUserResult>> createBatch(@RequestBody List<CreateUserRequest> requests) throws UserServiceException {
+        userShardedStore.checkSupported("Batch create");
+        List<CreateUserResult> results = userBatchService.createUsers(requests);
+        userRejectionMetrics.rejectBatchItems(results);
+        return new BaseResponse<>(results, null);
+    }
+
+    @GetMapping("/{id}")
+    public BaseResponse<UserDto> get(@PathVariable Long id, WebRequest webRequest) throws UserServiceException {
+        UserDto user = userService.getUser(id);
+        if (webRequest.checkNotModified(eTag(user))) {
+            return null;
+        }
+        return new BaseResponse<>(user, null);
+    }
+
+    @GetMapping("/by-email")
+    public BaseResponse<UserDto> getByEmail(@RequestParam(name = "email") String email) throws UserServiceException {
+        return new BaseResponse<>(userService.getUserByEmail(email), null);
+    }
+
+    @GetMapping(params = "ids")
+    public BaseResponse<UserMultiGetResult> getByIds(@RequestParam(name = "ids") List<Long> ids) throws UserServiceException {
+        return new BaseResponse<>(userService.getUsers(ids), null);
+    }
+
+    @PostMapping("/by-ids")
+    public BaseResponse<UserMultiGetResult> getByIdsInBody(@RequestBody List<Long> ids) throws UserServiceException {
+        return new BaseResponse<>(userService.getUsers(ids), null);
+    }
+
     @PutMapping("/{id}")
-    public BaseResponse<UserDto> updateComplete(@PathVariable Long id, @RequestBody @Valid CreateUserRequest request) throws UserServiceException {
-        return new BaseResponse<>(userService.updateAllUserFields(id, request), null);
+    public ResponseEntity<BaseResponse<UserDto>> updateComplete(@PathVariable Long id,
+                                                                @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                                @RequestBody @Valid CreateUserRequest request) throws UserServiceException {
+        UserDto user = userService.updateAllUserFields(id, request, expectedVersion(ifMatch));
+        return ResponseEntity.ok().eTag(eTag(user)).body(new BaseResponse<>(user, null));
     }
 
     @PatchMapping("/{id}")
-    public BaseResponse<UserDto> updatePartial(@PathVariable Long id, @RequestBody @Valid UpdateUserRequest request) throws UserServiceException {
-        return new BaseResponse<>(userService.updateSomeUserFields(id, request), null);
+    public ResponseEntity<BaseResponse<UserDto>> updatePartial(@PathVariable Long id,
+                                                               @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                               @RequestBody @Valid UpdateUserRequest request) throws UserServiceException {
+        UserDto user = userService.updateSomeUserFields(id, request, expectedVersion(ifMatch));
+        return ResponseEntity.ok().eTag(eTag(user)).body(new BaseResponse<>(user, null));
     }
 
     @GetMapping()
@@ -37,11 +94,91 @@ public class UserController {
         return new BaseResponse<>(userService.searchUsersByBirthday(from, to), null);
     }
 
+    @GetMapping("/page")
+    public BaseResponse<UserPage> searchByBirthdayPage(@RequestParam(name = "from") LocalDate from,
+                                                       @RequestParam(name = "to") LocalDate to,
+                                                       @RequestParam(name = "limit", defaultValue = "100") int limit,
+                                                       @RequestParam(name = "next", required = false) String next) throws UserServiceException {
+        return new BaseResponse<>(userService.searchUsersByBirthday(from, to, limit, next), null);
+    }
+
+    @GetMapping("/upcoming-birthdays")
+    public BaseResponse<UserPage> searchUpcomingBirthdays(@RequestParam(name = "days") int days,
+                                                          @RequestParam(name = "from", required = false) LocalDate from,
+                                                          @RequestParam(name = "limit", defaultValue = "100") int limit,
+                                                          @RequestParam(name = "next", required = false) String next) throws UserServiceException {
+        LocalDate start = from == null ? LocalDate.now() : from;
+        return new BaseResponse<>(userService.searchUpcomingBirthdays(start, days, limit, next), null);
+    }
+
+    @GetMapping("/search")
+    public BaseResponse<UserPage> search(@RequestParam(name = "q") String query,
+                                         @RequestParam(name = "limit", defaultValue = "100") int limit,
+                                         @RequestParam(name = "next", required = false) String next) throws UserServiceException {
+        return new BaseResponse<>(userService.searchUsers(query, limit, next), null);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void streamByBirthday(@RequestParam(name = "from") LocalDate from,
+                                 @RequestParam(name = "to") LocalDate to,
+                                 HttpServletResponse response) throws UserServiceException, IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        ObjectWriter writer = objectMapper.writerFor(UserDto.class);
+        userService.streamUsersByBirthday(from, to, user -> {
+            try {
+                out.write(writer.writeValueAsBytes(user));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        out.flush();
+    }
+
 
     @DeleteMapping("/{id}")
     public BaseResponse<String> delete(@PathVariable Long id) {
-        userService.deleteUser(id);
-        return new BaseResponse<>("user " + id + " is deleted", null);
+        return new BaseResponse<>(deleteMessage(id, userService.deleteUser(id)), null);
+    }
+
+    @DeleteMapping(params = "ids")
+    public BaseResponse<Long> deleteByIds(@RequestParam(name = "ids") List<Long> ids) throws UserServiceException {
+        userShardedStore.checkSupported("Bulk delete");
+        return new BaseResponse<>(userBatchService.deleteUsers(ids), null);
+    }
+
+    @DeleteMapping(params = {"from", "to"})
+    public BaseResponse<Long> deleteByBirthday(@RequestParam(name = "from") LocalDate from,
+                                               @RequestParam(name = "to") LocalDate to) throws UserServiceException {
+        userShardedStore.checkSupported("Bulk delete");
+        return new BaseResponse<>(userBatchService.deleteUsersByBirthday(from, to), null);
+    }
+
+    /**
+     * Deleting a user that does not exist succeeds as well, but is not reported as a delete.
+     */
+    static String deleteMessage(Long id, long deleted) {
+        return deleted > 0 ? "user " + id + " is deleted" : "user " + id + " does not exist";
+    }
+
+    static String eTag(UserDto user) {
+        return "\"" + user.getVersion() + "\"";
+    }
+
+    static Long expectedVersion(String ifMatch) throws UserServiceException {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String eTag = ifMatch.trim();
+        if (eTag.startsWith("W/")) {
+            eTag = eTag.substring(2);
+        }
+        try {
+            return Long.parseLong(eTag.replace("\"", ""));
+        } catch (NumberFormatException e) {
+            throw new UserServiceException("If-Match should contain an ETag returned for the user");
+        }
     }
 
 }
@@ -0,0 +1,175 @@
+package org.mvasylchuk.userservice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-process Bloom filter of the emails of users, enabled with {@code userService.emailFilter.enabled}, so that
+ * single, batch and reactive creates can skip the email check query for emails that are definitely not taken. It
+ * answers "maybe" for taken emails and for about {@code userService.emailFilter.falsePositiveRate} of the others, while
+ * there are up to {@code userService.emailFilter.expectedEmails} of them. Lookups by email always query the database:
+ * the filter may lack emails that were just imported or written by other instances.
+ * <p>
+ * The filter is built on a background thread by streaming the emails of {@code users}, and answers "maybe" until that
+ * is done. Emails written through {@link UserService} and {@link UserBatchService} are added at once. A Bloom filter
+ * cannot forget, so it is rebuilt every {@code userService.emailFilter.rebuildInterval}, which also drops the emails
+ * of deleted users and picks up those of imports and other instances. Missing emails are not a correctness problem:
+ * the unique key of {@code users.email} still rejects them and is reported as {@link UserService#EMAIL_EXISTS_ERROR}.
+ * <p>
+ * Not used in sharded mode.
+ */
+@Component
+public class UserEmailFilter implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UserEmailFilter.class);
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final boolean enabled;
+    private final int bitCount;
+    private final int hashCount;
+    private final JdbcTemplate jdbcTemplate;
+    private final ScheduledExecutorService rebuilder;
+    private volatile Bits bits;
+    // also receives new emails while a rebuild reads the table
+    private volatile Bits next;
+
+    public UserEmailFilter(@Value("${userService.emailFilter.enabled}") boolean enabled,
+                           @Value("${userService.emailFilter.expectedEmails}") long expectedEmails,
+                           @Value("${userService.emailFilter.falsePositiveRate}") double falsePositiveRate,
+                           @Value("${userService.emailFilter.rebuildInterval}") Duration rebuildInterval,
+                           DataSource dataSource) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalStateException("userService.emailFilter.falsePositiveRate should be between 0 and 1");
+        }
+        this.enabled = enabled;
+        // the optimal sizes for n elements and rate p: m = -n ln p / (ln 2)^2 bits and k = m / n ln 2 hashes
+        long optimalBitCount = (long) Math.ceil(-expectedEmails * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = (int) Math.min(Math.max(optimalBitCount, Long.SIZE), Integer.MAX_VALUE - Long.SIZE);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEmails * Math.log(2)));
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-email-filter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            rebuilder.scheduleWithFixedDelay(this::rebuild, 0, rebuildInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Whether the filter is enabled and built.
+     */
+    public boolean isReady() {
+        return bits != null;
+    }
+
+    /**
+     * {@code false} when the email, ignoring case, was not taken at the last rebuild nor written through this instance
+     * since. Always {@code true} until the filter is built. Emails of other writers may be missed until the next
+     * rebuild, so a {@code false} can only save a check that the unique key backs up.
+     */
+    public boolean mightContain(String email) {
+        Bits current = bits;
+        return current == null || current.mightContain(hash(email));
+    }
+
+    public void put(String email) {
+        if (!enabled) {
+            return;
+        }
+        long hash = hash(email);
+        // next before bits: a rebuild replaces bits before it clears next
+        Bits building = next;
+        Bits current = bits;
+        if (building != null) {
+            building.put(hash);
+        }
+        if (current != null) {
+            current.put(hash);
+        }
+    }
+
+    void rebuild() {
+        try {
+            Bits building = new Bits();
+            // set before reading, so that emails committed after the read started are not missed
+            next = building;
+            jdbcTemplate.query("SELECT email FROM users", (RowCallbackHandler) row -> building.put(hash(row.getString(1))));
+            bits = building;
+        } catch (Exception e) {
+            log.warn("Email filter rebuild failed", e);
+        } finally {
+            next = null;
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a of the lowercase email, finished with the MurmurHash3 mixer so that both halves are usable.
+     */
+    private static long hash(String email) {
+        String normalized = email.toLowerCase(Locale.ROOT);
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < normalized.length(); i++) {
+            hash ^= normalized.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public void close() {
+        rebuilder.shutdownNow();
+    }
+
+    /**
+     * The bit array, with the {@code k} positions of a hash derived from its halves by double hashing.
+     */
+    private class Bits {
+        private final AtomicLongArray words = new AtomicLongArray((bitCount + Long.SIZE - 1) / Long.SIZE);
+
+        void put(long hash) {
+            int first = (int) hash;
+            int second = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = ((first + i * second) & Integer.MAX_VALUE) % bitCount;
+                long mask = 1L << bit;
+                int word = bit >>> 6;
+                long value = words.get(word);
+                while ((value & mask) == 0 && !words.compareAndSet(word, value, value | mask)) {
+                    value = words.get(word);
+                }
+            }
+        }
+
+        boolean mightContain(long hash) {
+            int first = (int) hash;
+            int second = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = ((first + i * second) & Integer.MAX_VALUE) % bitCount;
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
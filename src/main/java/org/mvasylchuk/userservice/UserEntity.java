@@ -15,10 +15,12 @@ import java.time.LocalDate;
 public class UserEntity {
     private static final String ID_GENERATOR_NAME = "user_id_gen";
     private static final String ID_SEQ_NAME = "user_id_seq";
+    // must match the INCREMENT BY of user_id_seq, see V3__pool_user_id_seq.sql
+    static final int ID_ALLOCATION_SIZE = 50;
 
     @Id
     @GeneratedValue(generator = ID_GENERATOR_NAME)
-    @SequenceGenerator(name = ID_GENERATOR_NAME, sequenceName = ID_SEQ_NAME, allocationSize = 1)
+    @SequenceGenerator(name = ID_GENERATOR_NAME, sequenceName = ID_SEQ_NAME, allocationSize = ID_ALLOCATION_SIZE)
     @Column(name = "id", nullable = false)
     private Long id;
 
@@ -34,10 +36,37 @@ public class UserEntity {
     @Column(name = "birth_date", nullable = false)
     private LocalDate birthDate;
 
+    // generated by the database from birth_date, see V8__add_users_birth_month_day.sql
+    @EqualsAndHashCode.Exclude
+    @Column(name = "birth_month_day", insertable = false, updatable = false)
+    private Short birthMonthDay;
+
     @Column(name = "address")
     private String address;
 
     @Column(name = "phone_number")
     private String phoneNumber;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    // generated by the database, see V9__add_users_search_columns.sql
+    @EqualsAndHashCode.Exclude
+    @Column(name = "email_lower", insertable = false, updatable = false)
+    private String emailLower;
+
+    @EqualsAndHashCode.Exclude
+    @Column(name = "last_name_lower", insertable = false, updatable = false)
+    private String lastNameLower;
+
+    @EqualsAndHashCode.Exclude
+    @Column(name = "first_name_lower", insertable = false, updatable = false)
+    private String firstNameLower;
+
+    public UserEntity(Long id, String email, String firstName, String lastName, LocalDate birthDate, String address,
+                      String phoneNumber) {
+        this(id, email, firstName, lastName, birthDate, null, address, phoneNumber, null, null, null, null);
+    }
+
 }
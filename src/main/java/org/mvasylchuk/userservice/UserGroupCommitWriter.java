@@ -0,0 +1,154 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.CreateUserResult;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Group commit of single-user creates. Callers put their requests into a bounded queue and one writer thread takes
+ * them in groups: it waits up to {@code userService.groupCommit.window} for more requests after the first one, up to
+ * {@code userService.groupCommit.maxGroupSize}, and writes the group with {@link UserBatchService#createUsers}, so a
+ * group costs one email check, one batched insert and one commit. When the queue is full, callers wait up to
+ * {@code userService.groupCommit.enqueueTimeout} and are rejected after that. Callers wait for their group up to
+ * {@code userService.groupCommit.writeTimeout}, after which the user may or may not have been created.
+ */
+@Component
+public class UserGroupCommitWriter {
+    private static final Logger log = LoggerFactory.getLogger(UserGroupCommitWriter.class);
+
+    private final boolean enabled;
+    private final int maxGroupSize;
+    private final Duration window;
+    private final Duration enqueueTimeout;
+    private final Duration writeTimeout;
+    private final BlockingQueue<PendingUser> queue;
+    private final UserBatchService userBatchService;
+    private final Thread writer;
+
+    public UserGroupCommitWriter(@Value("${userService.groupCommit.enabled}") boolean enabled,
+                                 @Value("${userService.groupCommit.maxGroupSize}") int maxGroupSize,
+                                 @Value("${userService.groupCommit.window}") Duration window,
+                                 @Value("${userService.groupCommit.queueCapacity}") int queueCapacity,
+                                 @Value("${userService.groupCommit.enqueueTimeout}") Duration enqueueTimeout,
+                                 @Value("${userService.groupCommit.writeTimeout}") Duration writeTimeout,
+                                 UserBatchService userBatchService) {
+        this.enabled = enabled;
+        this.maxGroupSize = maxGroupSize;
+        this.window = window;
+        this.enqueueTimeout = enqueueTimeout;
+        this.writeTimeout = writeTimeout;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.userBatchService = userBatchService;
+        this.writer = new Thread(this::run, "user-group-commit");
+        if (enabled) {
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Creates the user in the next group and waits for the group to commit. The request should already be validated.
+     */
+    public UserDto createUser(CreateUserRequest request) throws UserServiceException {
+        PendingUser pending = new PendingUser(request, new CompletableFuture<>());
+        try {
+            if (!queue.offer(pending, enqueueTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new UserServiceBusyException("Too many users are being created, retry later");
+            }
+            return pending.getResult().get(writeTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new UserServiceBusyException("Creating the user took too long, retry later");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while creating a user", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UserServiceException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void run() {
+        List<PendingUser> group = new ArrayList<>(maxGroupSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                group.add(queue.take());
+                long deadline = System.nanoTime() + window.toNanos();
+                while (group.size() < maxGroupSize) {
+                    if (queue.drainTo(group, maxGroupSize - group.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    PendingUser next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+                write(group);
+                group.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        group.addAll(queue);
+        group.forEach(pending -> pending.getResult().completeExceptionally(
+                new UserServiceBusyException("User service is shutting down")));
+    }
+
+    private void write(List<PendingUser> group) {
+        try {
+            List<CreateUserResult> results = userBatchService.createUsers(group.stream().map(PendingUser::getRequest).toList());
+            for (int i = 0; i < group.size(); i++) {
+                complete(group.get(i), results.get(i));
+            }
+        } catch (Throwable e) {
+            // the writer keeps running, so that one failed group does not leave the callers of the next ones waiting
+            log.error("Group commit of {} users failed", group.size(), e);
+            group.forEach(pending -> pending.getResult().completeExceptionally(e));
+        }
+    }
+
+    private static void complete(PendingUser pending, CreateUserResult result) {
+        if (result.getId() != null) {
+            // a new row starts at the initial version
+            pending.getResult().complete(UserMapper.toDto(result.getId(), pending.getRequest(), 0L));
+        } else if (result.getReason() == UserRejectionReason.INTERNAL) {
+            pending.getResult().completeExceptionally(new IllegalStateException("User was not inserted"));
+        } else if (result.getReason() == UserRejectionReason.DUPLICATE_EMAIL) {
+            // also when another caller in the same group registered the email first
+            pending.getResult().completeExceptionally(new UserServiceException(UserRejectionReason.DUPLICATE_EMAIL, UserService.EMAIL_EXISTS_ERROR));
+        } else {
+            pending.getResult().completeExceptionally(new UserServiceException(result.getReason(), result.getErrorMessage()));
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        writer.interrupt();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class PendingUser {
+        private final CreateUserRequest request;
+        private final CompletableFuture<UserDto> result;
+    }
+}
@@ -0,0 +1,51 @@
+package org.mvasylchuk.userservice;
+
+import lombok.RequiredArgsConstructor;
+import org.mvasylchuk.userservice.dto.UserImportDto;
+import org.mvasylchuk.userservice.dto.UserImportRejectionDto;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/api/users/imports")
+@RequiredArgsConstructor
+public class UserImportController {
+    private static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final UserImportService userImportService;
+    private final UserShardedStore userShardedStore;
+
+    @PostMapping(consumes = {MediaType.APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE})
+    public BaseResponse<UserImportDto> start(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                             InputStream body) throws UserServiceException, IOException {
+        userShardedStore.checkSupported("Import");
+        return new BaseResponse<>(userImportService.startImport(UserImportFormat.of(contentType), body), null);
+    }
+
+    @PostMapping(value = "/{id}/resume", consumes = {MediaType.APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE})
+    public BaseResponse<UserImportDto> resume(@PathVariable Long id,
+                                              @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                              InputStream body) throws UserServiceException, IOException {
+        userShardedStore.checkSupported("Import");
+        return new BaseResponse<>(userImportService.resumeImport(id, UserImportFormat.of(contentType), body), null);
+    }
+
+    @GetMapping("/{id}")
+    public BaseResponse<UserImportDto> get(@PathVariable Long id) throws UserServiceException {
+        return new BaseResponse<>(userImportService.getImport(id), null);
+    }
+
+    @GetMapping("/{id}/rejections")
+    public BaseResponse<List<UserImportRejectionDto>> rejections(@PathVariable Long id,
+                                                                 @RequestParam(name = "after", defaultValue = "0") long after,
+                                                                 @RequestParam(name = "limit", defaultValue = "100") int limit) throws UserServiceException {
+        return new BaseResponse<>(userImportService.getRejections(id, after, limit), null);
+    }
+}
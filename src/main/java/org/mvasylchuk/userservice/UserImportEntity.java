@@ -0,0 +1,43 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "user_imports")
+public class UserImportEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "format", nullable = false)
+    private UserImportFormat format;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private UserImportStatus status;
+
+    @Column(name = "processed_records", nullable = false)
+    private long processedRecords;
+
+    @Column(name = "created_records", nullable = false)
+    private long createdRecords;
+
+    @Column(name = "rejected_records", nullable = false)
+    private long rejectedRecords;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+}
@@ -0,0 +1,29 @@
+package org.mvasylchuk.userservice;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+public enum UserImportFormat {
+    NDJSON(MediaType.APPLICATION_NDJSON),
+    CSV(new MediaType("text", "csv"));
+
+    private final MediaType mediaType;
+
+    UserImportFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public static UserImportFormat of(String contentType) throws UserServiceException {
+        try {
+            MediaType requested = MediaType.parseMediaType(contentType);
+            for (UserImportFormat format : values()) {
+                if (format.mediaType.isCompatibleWith(requested)) {
+                    return format;
+                }
+            }
+        } catch (InvalidMediaTypeException e) {
+            // reported below together with unsupported types
+        }
+        throw new UserServiceException("Import supports " + NDJSON.mediaType + " and " + CSV.mediaType + " only");
+    }
+}
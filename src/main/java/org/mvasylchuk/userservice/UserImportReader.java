@@ -0,0 +1,158 @@
+package org.mvasylchuk.userservice;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads {@link CreateUserRequest} records one at a time from an NDJSON or CSV upload, so only the current record is
+ * held in memory. Records are numbered from 1; blank NDJSON lines and the CSV header are not records.
+ */
+abstract class UserImportReader implements Closeable {
+    private final Reader reader;
+    private long recordNumber;
+
+    private UserImportReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    static UserImportReader open(UserImportFormat format, InputStream input, ObjectMapper objectMapper) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        return switch (format) {
+            case NDJSON -> new Ndjson(reader, objectMapper);
+            case CSV -> new Csv(reader);
+        };
+    }
+
+    /**
+     * @return the next record, or {@code null} when the input is exhausted
+     */
+    UserImportRecord next() throws IOException {
+        if (!advance()) {
+            return null;
+        }
+        recordNumber++;
+        try {
+            return new UserImportRecord(recordNumber, parseCurrent(), null);
+        } catch (RecordFormatException e) {
+            return new UserImportRecord(recordNumber, null, e.getMessage());
+        }
+    }
+
+    /**
+     * Skips records that were already committed by a previous run of the same import.
+     */
+    void skip(long records) throws IOException {
+        while (recordNumber < records && advance()) {
+            recordNumber++;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Moves to the next record without parsing it.
+     *
+     * @return {@code false} when the input is exhausted
+     */
+    abstract boolean advance() throws IOException;
+
+    abstract CreateUserRequest parseCurrent() throws RecordFormatException;
+
+    private static class Ndjson extends UserImportReader {
+        private final BufferedReader lines;
+        private final ObjectMapper objectMapper;
+        private String line;
+
+        Ndjson(BufferedReader lines, ObjectMapper objectMapper) {
+            super(lines);
+            this.lines = lines;
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            do {
+                line = lines.readLine();
+            } while (line != null && line.isBlank());
+            return line != null;
+        }
+
+        @Override
+        CreateUserRequest parseCurrent() throws RecordFormatException {
+            try {
+                return objectMapper.readValue(line, CreateUserRequest.class);
+            } catch (JsonProcessingException e) {
+                throw new RecordFormatException("Record is not a valid user JSON object");
+            }
+        }
+    }
+
+    private static class Csv extends UserImportReader {
+        private static final List<String> COLUMNS = List.of("email", "firstName", "lastName", "birthDate", "address", "phoneNumber");
+
+        private final MappingIterator<String[]> rows;
+        private final int[] columnIndexes = new int[COLUMNS.size()];
+        private String[] row;
+
+        Csv(Reader reader) throws IOException {
+            super(reader);
+            this.rows = new CsvMapper()
+                    .readerFor(String[].class)
+                    .with(CsvParser.Feature.WRAP_AS_ARRAY)
+                    .readValues(reader);
+            List<String> header = rows.hasNextValue() ? Arrays.asList(rows.nextValue()) : List.of();
+            for (int i = 0; i < COLUMNS.size(); i++) {
+                columnIndexes[i] = header.indexOf(COLUMNS.get(i));
+            }
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            row = rows.hasNextValue() ? rows.nextValue() : null;
+            return row != null;
+        }
+
+        @Override
+        CreateUserRequest parseCurrent() throws RecordFormatException {
+            String birthDate = column(3);
+            try {
+                return new CreateUserRequest(column(0),
+                        column(1),
+                        column(2),
+                        birthDate == null ? null : LocalDate.parse(birthDate),
+                        column(4),
+                        column(5));
+            } catch (DateTimeParseException e) {
+                throw new RecordFormatException("birthDate: must be a date in yyyy-MM-dd format");
+            }
+        }
+
+        private String column(int column) {
+            int index = columnIndexes[column];
+            if (index < 0 || index >= row.length || row[index].isEmpty()) {
+                return null;
+            }
+            return row[index];
+        }
+    }
+
+    static class RecordFormatException extends Exception {
+        RecordFormatException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.mvasylchuk.userservice;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+
+@Getter
+@AllArgsConstructor
+class UserImportRecord {
+    private final long recordNumber;
+    private final CreateUserRequest request;
+    private final String parseError;
+}
@@ -0,0 +1,36 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@IdClass(UserImportRejectionEntity.Key.class)
+@Table(name = "user_import_rejections")
+public class UserImportRejectionEntity {
+    @Id
+    @Column(name = "import_id", nullable = false)
+    private Long importId;
+
+    @Id
+    @Column(name = "record_number", nullable = false)
+    private long recordNumber;
+
+    @Column(name = "error_message", nullable = false)
+    private String errorMessage;
+
+    @Getter
+    @Setter
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+        private Long importId;
+        private long recordNumber;
+    }
+}
@@ -0,0 +1,10 @@
+package org.mvasylchuk.userservice;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface UserImportRejectionRepository extends JpaRepository<UserImportRejectionEntity, UserImportRejectionEntity.Key> {
+    List<UserImportRejectionEntity> findAllByImportIdAndRecordNumberGreaterThanOrderByRecordNumber(Long importId, long afterRecordNumber, Limit limit);
+}
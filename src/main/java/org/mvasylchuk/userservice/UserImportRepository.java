@@ -0,0 +1,28 @@
+package org.mvasylchuk.userservice;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface UserImportRepository extends JpaRepository<UserImportEntity, Long> {
+    @Modifying(clearAutomatically = true)
+    @Query("update UserImportEntity i " +
+            "set i.processedRecords = i.processedRecords + :processed, " +
+            "i.createdRecords = i.createdRecords + :created, " +
+            "i.rejectedRecords = i.rejectedRecords + :rejected, " +
+            "i.updatedAt = :now " +
+            "where i.id = :id and i.processedRecords = :expectedProcessed")
+    int advance(@Param("id") Long id,
+                @Param("expectedProcessed") long expectedProcessed,
+                @Param("processed") long processed,
+                @Param("created") long created,
+                @Param("rejected") long rejected,
+                @Param("now") LocalDateTime now);
+
+    @Modifying(clearAutomatically = true)
+    @Query("update UserImportEntity i set i.status = :status, i.updatedAt = :now where i.id = :id")
+    int updateStatus(@Param("id") Long id, @Param("status") UserImportStatus status, @Param("now") LocalDateTime now);
+}
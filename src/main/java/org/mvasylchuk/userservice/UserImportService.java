@@ -0,0 +1,226 @@
+package org.mvasylchuk.userservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.UserImportDto;
+import org.mvasylchuk.userservice.dto.UserImportRejectionDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Imports users from NDJSON or CSV uploads in fixed-size chunks. Each chunk's users, rejected records and progress
+ * counters are committed in one transaction, so an interrupted import can be resumed by uploading the same file again:
+ * the records covered by committed chunks are skipped.
+ */
+@Service
+public class UserImportService {
+    private static final int MAX_CHUNK_ATTEMPTS = 3;
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final int chunkSize;
+    private final int jdbcBatchSize;
+    private final int maxPageSize;
+    private final UserImportRepository userImportRepository;
+    private final UserImportRejectionRepository rejectionRepository;
+    private final UserRepository userRepository;
+    private final UserBatchService userBatchService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final UserCache userCache;
+    private final UserChangeService userChangeService;
+
+    public UserImportService(@Value("${userService.import.chunkSize}") int chunkSize,
+                             @Value("${userService.batch.jdbcBatchSize}") int jdbcBatchSize,
+                             @Value("${userService.maxPageSize}") int maxPageSize,
+                             UserImportRepository userImportRepository,
+                             UserImportRejectionRepository rejectionRepository,
+                             UserRepository userRepository,
+                             UserBatchService userBatchService,
+                             ObjectMapper objectMapper,
+                             PlatformTransactionManager transactionManager,
+                             EntityManager entityManager,
+                             UserCache userCache,
+                             UserChangeService userChangeService) {
+        this.chunkSize = chunkSize;
+        this.jdbcBatchSize = jdbcBatchSize;
+        this.maxPageSize = maxPageSize;
+        this.userImportRepository = userImportRepository;
+        this.rejectionRepository = rejectionRepository;
+        this.userRepository = userRepository;
+        this.userBatchService = userBatchService;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.entityManager = entityManager;
+        this.userCache = userCache;
+        this.userChangeService = userChangeService;
+    }
+
+    public UserImportDto startImport(UserImportFormat format, InputStream input) throws IOException {
+        LocalDateTime now = LocalDateTime.now();
+        UserImportEntity userImport = userImportRepository.save(new UserImportEntity(null,
+                format,
+                UserImportStatus.RUNNING,
+                0,
+                0,
+                0,
+                now,
+                now));
+        return runImport(userImport.getId(), format, 0, input);
+    }
+
+    public UserImportDto resumeImport(Long id, UserImportFormat format, InputStream input) throws UserServiceException, IOException {
+        // read in a read-write transaction, so that it is not served by a replica that lags behind the progress
+        UserImportEntity userImport = transactionTemplate.execute(status -> userImportRepository.findById(id))
+                .orElseThrow(() -> new UserServiceException(UserRejectionReason.NOT_FOUND, "Import is not found"));
+        if (userImport.getStatus() == UserImportStatus.COMPLETED) {
+            throw new UserServiceException("Import is already completed");
+        }
+        if (userImport.getFormat() != format) {
+            throw new UserServiceException("Import was started with " + userImport.getFormat() + " format");
+        }
+        transactionTemplate.executeWithoutResult(status ->
+                userImportRepository.updateStatus(id, UserImportStatus.RUNNING, LocalDateTime.now()));
+        return runImport(id, format, userImport.getProcessedRecords(), input);
+    }
+
+    public UserImportDto getImport(Long id) throws UserServiceException {
+        UserImportEntity userImport = userImportRepository.findById(id).orElseThrow(() -> new UserServiceException(UserRejectionReason.NOT_FOUND, "Import is not found"));
+        return new UserImportDto(userImport.getId(),
+                userImport.getFormat().name(),
+                userImport.getStatus().name(),
+                userImport.getProcessedRecords(),
+                userImport.getCreatedRecords(),
+                userImport.getRejectedRecords(),
+                userImport.getStartedAt(),
+                userImport.getUpdatedAt());
+    }
+
+    public List<UserImportRejectionDto> getRejections(Long id, long afterRecordNumber, int limit) throws UserServiceException {
+        if (limit < 1 || limit > maxPageSize) {
+            throw new UserServiceException("Limit should be between 1 and " + maxPageSize);
+        }
+        return rejectionRepository.findAllByImportIdAndRecordNumberGreaterThanOrderByRecordNumber(id, afterRecordNumber, Limit.of(limit))
+                .stream()
+                .map(rejection -> new UserImportRejectionDto(rejection.getRecordNumber(), rejection.getErrorMessage()))
+                .toList();
+    }
+
+    private UserImportDto runImport(Long id, UserImportFormat format, long processedRecords, InputStream input) throws IOException {
+        try (UserImportReader reader = UserImportReader.open(format, input, objectMapper)) {
+            reader.skip(processedRecords);
+            List<UserImportRecord> chunk = new ArrayList<>(chunkSize);
+            UserImportRecord record;
+            while ((record = reader.next()) != null) {
+                chunk.add(record);
+                if (chunk.size() == chunkSize) {
+                    processedRecords = commitChunk(id, processedRecords, chunk);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                commitChunk(id, processedRecords, chunk);
+            }
+            transactionTemplate.executeWithoutResult(status ->
+                    userImportRepository.updateStatus(id, UserImportStatus.COMPLETED, LocalDateTime.now()));
+        } catch (IOException | RuntimeException e) {
+            transactionTemplate.executeWithoutResult(status ->
+                    userImportRepository.updateStatus(id, UserImportStatus.FAILED, LocalDateTime.now()));
+            throw e;
+        }
+        try {
+            return getImport(id);
+        } catch (UserServiceException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long commitChunk(Long id, long processedRecords, List<UserImportRecord> chunk) {
+        Map<Long, String> validationErrors = new HashMap<>();
+        for (UserImportRecord record : chunk) {
+            if (record.getParseError() != null) {
+                validationErrors.put(record.getRecordNumber(), record.getParseError());
+                continue;
+            }
+            UserServiceException error = userBatchService.validate(record.getRequest());
+            if (error != null) {
+                validationErrors.put(record.getRecordNumber(), error.getMessage());
+            }
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                List<Long> createdIds = transactionTemplate.execute(status -> insertChunk(id, processedRecords, chunk, validationErrors));
+                userCache.invalidateAll(createdIds);
+                return processedRecords + chunk.size();
+            } catch (DataIntegrityViolationException e) {
+                // an email was inserted concurrently after the existence check; the next attempt will reject it
+                if (attempt == MAX_CHUNK_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private List<Long> insertChunk(Long id, long processedRecords, List<UserImportRecord> chunk, Map<Long, String> validationErrors) {
+        Map<Long, String> errors = new HashMap<>(validationErrors);
+        List<UserImportRecord> candidates = chunk.stream()
+                .filter(record -> !errors.containsKey(record.getRecordNumber()))
+                .toList();
+
+        Set<String> existingEmails = new HashSet<>();
+        if (!candidates.isEmpty()) {
+            userRepository.findExistingEmails(candidates.stream().map(record -> record.getRequest().getEmail()).toList())
+                    .forEach(email -> existingEmails.add(UserBatchService.normalize(email)));
+        }
+
+        Set<String> chunkEmails = new HashSet<>();
+        List<UserEntity> accepted = new ArrayList<>();
+        for (UserImportRecord record : candidates) {
+            CreateUserRequest request = record.getRequest();
+            String email = UserBatchService.normalize(request.getEmail());
+            if (existingEmails.contains(email)) {
+                errors.put(record.getRecordNumber(), UserService.EMAIL_EXISTS_ERROR);
+            } else if (!chunkEmails.add(email)) {
+                errors.put(record.getRecordNumber(), UserBatchService.DUPLICATE_IN_BATCH_ERROR);
+            } else {
+                accepted.add(UserMapper.toEntity(request));
+            }
+        }
+
+        entityManager.unwrap(Session.class).setJdbcBatchSize(jdbcBatchSize);
+        userRepository.saveAll(accepted);
+        errors.forEach((recordNumber, error) -> entityManager.persist(
+                new UserImportRejectionEntity(id, recordNumber, truncate(error))));
+        userRepository.flush();
+        List<Long> createdIds = accepted.stream().map(UserEntity::getId).toList();
+        userChangeService.recordChanges(UserChangeType.CREATED, createdIds);
+        entityManager.clear();
+
+        int updated = userImportRepository.advance(id,
+                processedRecords,
+                chunk.size(),
+                accepted.size(),
+                errors.size(),
+                LocalDateTime.now());
+        if (updated == 0) {
+            throw new IllegalStateException("Import " + id + " was advanced by another run");
+        }
+        return createdIds;
+    }
+
+    private static String truncate(String error) {
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+}
@@ -0,0 +1,7 @@
+package org.mvasylchuk.userservice;
+
+public enum UserImportStatus {
+    RUNNING,
+    FAILED,
+    COMPLETED
+}
@@ -0,0 +1,78 @@
+package org.mvasylchuk.userservice;
+
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.UserChangeDto;
+import org.mvasylchuk.userservice.dto.UserDto;
+
+final class UserMapper {
+    private UserMapper() {
+    }
+
+    static UserEntity toEntity(CreateUserRequest request) {
+        return new UserEntity(null,
+                request.getEmail(),
+                request.getFirstName(),
+                request.getLastName(),
+                request.getBirthDate(),
+                request.getAddress(),
+                request.getPhoneNumber());
+    }
+
+    static UserReactiveEntity toReactiveEntity(Long id, CreateUserRequest request) {
+        return new UserReactiveEntity(id,
+                request.getEmail(),
+                request.getFirstName(),
+                request.getLastName(),
+                request.getBirthDate(),
+                request.getAddress(),
+                request.getPhoneNumber(),
+                null);
+    }
+
+    static UserDto toDto(UserEntity entity) {
+        return new UserDto(entity.getId(),
+                entity.getEmail(),
+                entity.getFirstName(),
+                entity.getLastName(),
+                entity.getBirthDate(),
+                entity.getAddress(),
+                entity.getPhoneNumber(),
+                entity.getVersion());
+    }
+
+    static UserDto toDto(UserReactiveEntity entity) {
+        return new UserDto(entity.getId(),
+                entity.getEmail(),
+                entity.getFirstName(),
+                entity.getLastName(),
+                entity.getBirthDate(),
+                entity.getAddress(),
+                entity.getPhoneNumber(),
+                entity.getVersion());
+    }
+
+    static UserDto toDto(Long id, CreateUserRequest request, Long version) {
+        return new UserDto(id,
+                request.getEmail(),
+                request.getFirstName(),
+                request.getLastName(),
+                request.getBirthDate(),
+                request.getAddress(),
+                request.getPhoneNumber(),
+                version);
+    }
+
+    static UserChangeDto toDto(UserChangeEntity change) {
+        return new UserChangeDto(change.getId(),
+                change.getType().name(),
+                change.getChangedAt(),
+                new UserDto(change.getUserId(),
+                        change.getEmail(),
+                        change.getFirstName(),
+                        change.getLastName(),
+                        change.getBirthDate(),
+                        change.getAddress(),
+                        change.getPhoneNumber(),
+                        change.getVersion()));
+    }
+}
@@ -0,0 +1,90 @@
+package org.mvasylchuk.userservice;
+
+import io.r2dbc.spi.ConnectionFactory;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.Disposable;
+
+/**
+ * Opt-in reactive stack, enabled with {@code spring.main.web-application-type=reactive}: the user API is served by
+ * {@link UserReactiveHandler} on Netty and reads and writes users over R2DBC ({@code spring.r2dbc.*}). Batch,
+ * import and change feed endpoints are only served by the servlet stack.
+ * <p>
+ * Flyway, and the blocking services that stay in the context, still use the JDBC DataSource. Spring Boot backs off
+ * from it when there is a {@link ConnectionFactory} bean, so R2DBC auto-configuration is excluded and the connection
+ * pool is wrapped into {@link UserReactiveConnections} instead.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@EnableConfigurationProperties(R2dbcProperties.class)
+@EnableR2dbcRepositories(entityOperationsRef = "userEntityTemplate")
+public class UserReactiveConfiguration {
+
+    @Bean(destroyMethod = "dispose")
+    UserReactiveConnections userReactiveConnections(R2dbcProperties properties) {
+        return new UserReactiveConnections(ConnectionFactoryBuilder.withUrl(properties.getUrl())
+                .username(properties.getUsername())
+                .password(properties.getPassword())
+                .build());
+    }
+
+    @Bean
+    R2dbcEntityTemplate userEntityTemplate(UserReactiveConnections connections) {
+        return new R2dbcEntityTemplate(connections.getConnectionFactory());
+    }
+
+    @Bean
+    TransactionalOperator userTransactionalOperator(UserReactiveConnections connections) {
+        return TransactionalOperator.create(new R2dbcTransactionManager(connections.getConnectionFactory()));
+    }
+
+    /**
+     * Tomcat, which is on the classpath for the servlet stack, would be picked otherwise.
+     */
+    @Bean
+    NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    RouterFunction<ServerResponse> userRoutes(UserReactiveHandler handler) {
+        return RouterFunctions.route()
+                .path("/api/users", users -> users
+                        .POST("", handler::create)
+                        .GET("/stream", handler::streamByBirthday)
+                        .GET("/page", handler::searchByBirthdayPage)
+                        .GET("/{id}", handler::get)
+                        .PUT("/{id}", handler::updateComplete)
+                        .PATCH("/{id}", handler::updatePartial)
+                        .DELETE("/{id}", handler::delete)
+                        .GET("", handler::searchByBirthday))
+                .onError(Exception.class, handler::error)
+                .build();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class UserReactiveConnections {
+        private final ConnectionFactory connectionFactory;
+
+        void dispose() {
+            if (connectionFactory instanceof Disposable disposable) {
+                disposable.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.mvasylchuk.userservice;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDate;
+
+/**
+ * R2DBC mapping of the {@code users} table for the reactive stack, see {@link UserEntity} for the JPA one.
+ */
+@Getter
+@Setter
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+@Table("users")
+public class UserReactiveEntity {
+    @Id
+    private Long id;
+    private String email;
+    private String firstName;
+    private String lastName;
+    private LocalDate birthDate;
+    private String address;
+    private String phoneNumber;
+    @Version
+    private Long version;
+}
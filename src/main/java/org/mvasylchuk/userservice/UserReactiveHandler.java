@@ -0,0 +1,201 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * WebFlux handlers of the reactive user API, routed in {@link UserReactiveConfiguration}. Requests, responses and
+ * error statuses match {@link UserController} and {@link ExceptionHandlingController}, except for the birthday search:
+ * it streams the users as they are read instead of wrapping them into a {@link BaseResponse}, as a JSON array or, on
+ * {@code /stream} and for {@code Accept: application/x-ndjson}, as NDJSON.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequiredArgsConstructor
+public class UserReactiveHandler {
+    private static final Logger log = LoggerFactory.getLogger(UserReactiveHandler.class);
+
+    private final UserReactiveService userService;
+    private final Validator validator;
+    private final UserRejectionMetrics userRejectionMetrics;
+
+    public Mono<ServerResponse> create(ServerRequest request) {
+        return body(request, CreateUserRequest.class)
+                .flatMap(userService::createUser)
+                .flatMap(user -> ServerResponse.ok().bodyValue(new BaseResponse<>(user, null)));
+    }
+
+    public Mono<ServerResponse> get(ServerRequest request) {
+        Long id;
+        try {
+            id = id(request);
+        } catch (UserServiceException e) {
+            return Mono.error(e);
+        }
+        return userService.getUser(id)
+                .flatMap(user -> request.checkNotModified(UserController.eTag(user))
+                        .switchIfEmpty(Mono.defer(() -> withETag(user))));
+    }
+
+    public Mono<ServerResponse> updateComplete(ServerRequest request) {
+        Long id;
+        Long expectedVersion;
+        try {
+            id = id(request);
+            expectedVersion = UserController.expectedVersion(request.headers().firstHeader(HttpHeaders.IF_MATCH));
+        } catch (UserServiceException e) {
+            return Mono.error(e);
+        }
+        return body(request, CreateUserRequest.class)
+                .flatMap(user -> userService.updateAllUserFields(id, user, expectedVersion))
+                .flatMap(this::withETag);
+    }
+
+    public Mono<ServerResponse> updatePartial(ServerRequest request) {
+        Long id;
+        Long expectedVersion;
+        try {
+            id = id(request);
+            expectedVersion = UserController.expectedVersion(request.headers().firstHeader(HttpHeaders.IF_MATCH));
+        } catch (UserServiceException e) {
+            return Mono.error(e);
+        }
+        return body(request, UpdateUserRequest.class)
+                .flatMap(changes -> userService.updateSomeUserFields(id, changes, expectedVersion))
+                .flatMap(this::withETag);
+    }
+
+    public Mono<ServerResponse> delete(ServerRequest request) {
+        Long id;
+        try {
+            id = id(request);
+        } catch (UserServiceException e) {
+            return Mono.error(e);
+        }
+        return userService.deleteUser(id)
+                .flatMap(deleted -> ServerResponse.ok().bodyValue(new BaseResponse<>(UserController.deleteMessage(id, deleted), null)));
+    }
+
+    public Mono<ServerResponse> searchByBirthday(ServerRequest request) {
+        boolean ndjson = request.headers().accept().contains(MediaType.APPLICATION_NDJSON);
+        return search(request, ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON);
+    }
+
+    public Mono<ServerResponse> streamByBirthday(ServerRequest request) {
+        return search(request, MediaType.APPLICATION_NDJSON);
+    }
+
+    public Mono<ServerResponse> searchByBirthdayPage(ServerRequest request) {
+        LocalDate from;
+        LocalDate to;
+        int limit;
+        try {
+            from = date(request, "from");
+            to = date(request, "to");
+            limit = Integer.parseInt(request.queryParam("limit").orElse("100"));
+        } catch (UserServiceException e) {
+            return Mono.error(e);
+        } catch (NumberFormatException e) {
+            return Mono.error(new UserServiceException("limit should be a number"));
+        }
+        return userService.searchUsersByBirthday(from, to, limit, request.queryParam("next").orElse(null))
+                .flatMap(page -> ServerResponse.ok().bodyValue(new BaseResponse<>(page, null)));
+    }
+
+    /**
+     * Maps errors the way {@link ExceptionHandlingController} does for the blocking API.
+     */
+    public Mono<ServerResponse> error(Throwable e, ServerRequest request) {
+        if (e instanceof UserServiceException rejection) {
+            userRejectionMetrics.reject(rejection.getReason());
+            if (e instanceof UserVersionMismatchException) {
+                return error(HttpStatus.PRECONDITION_FAILED, e.getMessage());
+            }
+            if (e instanceof UserServiceBusyException) {
+                return error(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+            }
+            return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        log.error("Request {} {} failed", request.method(), request.path(), e);
+        userRejectionMetrics.error();
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, "Internal error");
+    }
+
+    private Mono<ServerResponse> search(ServerRequest request, MediaType mediaType) {
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = date(request, "from");
+            to = date(request, "to");
+        } catch (UserServiceException e) {
+            return Mono.error(e);
+        }
+        if (from.isAfter(to)) {
+            // checked here, errors of the body itself come after the status is sent
+            return Mono.error(new UserServiceException("From should not exceed to "));
+        }
+        Flux<UserDto> users = userService.searchUsersByBirthday(from, to);
+        return ServerResponse.ok().contentType(mediaType).body(users, UserDto.class);
+    }
+
+    private Mono<ServerResponse> withETag(UserDto user) {
+        return ServerResponse.ok().eTag(UserController.eTag(user)).bodyValue(new BaseResponse<>(user, null));
+    }
+
+    private static Mono<ServerResponse> error(HttpStatus status, String message) {
+        return ServerResponse.status(status).bodyValue(new BaseResponse<Void>(null, message));
+    }
+
+    private <T> Mono<T> body(ServerRequest request, Class<T> type) {
+        return request.bodyToMono(type)
+                .switchIfEmpty(Mono.error(() -> new UserServiceException(UserBatchService.EMPTY_ITEM_ERROR)))
+                .flatMap(body -> {
+                    String error = validate(body);
+                    return error == null ? Mono.just(body) : Mono.error(new UserServiceException(error));
+                });
+    }
+
+    private <T> String validate(T body) {
+        return validator.validate(body).stream()
+                .map((ConstraintViolation<T> violation) -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static Long id(ServerRequest request) throws UserServiceException {
+        try {
+            return Long.valueOf(request.pathVariable("id"));
+        } catch (NumberFormatException e) {
+            throw new UserServiceException("id should be a number");
+        }
+    }
+
+    private static LocalDate date(ServerRequest request, String name) throws UserServiceException {
+        String value = request.queryParam(name)
+                .orElseThrow(() -> new UserServiceException(name + " is required"));
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new UserServiceException(name + " should be a date in yyyy-MM-dd format");
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.mvasylchuk.userservice;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+
+public interface UserReactiveRepository extends R2dbcRepository<UserReactiveEntity, Long>, UserReactiveRepositoryCustom {
+    String SELECT_USER = "SELECT id, email, first_name, last_name, birth_date, address, phone_number, version ";
+
+    Mono<Boolean> existsByEmail(String email);
+
+    @Modifying
+    @Query("UPDATE users " +
+            "SET email = :email, first_name = :firstName, last_name = :lastName, " +
+            "birth_date = :birthDate, address = :address, phone_number = :phoneNumber, " +
+            "version = version + 1 " +
+            "WHERE id = :id AND (:expectedVersion IS NULL OR version = :expectedVersion)")
+    Mono<Long> updateAllFields(@Param("id") Long id,
+                               @Param("expectedVersion") Long expectedVersion,
+                               @Param("email") String email,
+                               @Param("firstName") String firstName,
+                               @Param("lastName") String lastName,
+                               @Param("birthDate") LocalDate birthDate,
+                               @Param("address") String address,
+                               @Param("phoneNumber") String phoneNumber);
+
+    @Modifying
+    @Query("DELETE FROM users WHERE id = :id")
+    Mono<Long> deleteOneById(@Param("id") Long id);
+
+    @Query(SELECT_USER +
+            "FROM users " +
+            "WHERE birth_date BETWEEN :afterDate AND :to " +
+            "AND (birth_date > :afterDate OR id > :afterId) " +
+            "ORDER BY birth_date, id " +
+            "LIMIT :limit")
+    Flux<UserReactiveEntity> findPageByBirthDate(@Param("afterDate") LocalDate afterDate,
+                                                 @Param("afterId") long afterId,
+                                                 @Param("to") LocalDate to,
+                                                 @Param("limit") int limit);
+}
@@ -0,0 +1,23 @@
+package org.mvasylchuk.userservice;
+
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import reactor.core.publisher.Mono;
+
+
+public interface UserReactiveRepositoryCustom {
+    /**
+     * Allocates an id from {@code user_id_seq}. JPA hands out the block of ids below every sequence value it fetches,
+     * so the value itself is never used by another insert.
+     */
+    Mono<Long> nextId();
+
+    /**
+     * Same contract as {@link UserRepositoryCustom#updateUserFields}.
+     */
+    Mono<Long> updateUserFields(Long id, UpdateUserRequest changes, Long expectedVersion);
+
+    /**
+     * Reactive counterpart of {@link UserChangeRepositoryCustom#recordChanges} for one user.
+     */
+    Mono<Long> recordChange(UserChangeType type, Long userId);
+}
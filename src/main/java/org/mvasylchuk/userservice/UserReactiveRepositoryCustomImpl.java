@@ -0,0 +1,93 @@
+package org.mvasylchuk.userservice;
+
+import io.r2dbc.spi.Parameters;
+import io.r2dbc.spi.R2dbcType;
+import lombok.RequiredArgsConstructor;
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@RequiredArgsConstructor
+class UserReactiveRepositoryCustomImpl implements UserReactiveRepositoryCustom {
+    private static final String INSERT_CHANGE = "INSERT INTO user_changes " +
+            "(type, user_id, email, first_name, last_name, birth_date, address, phone_number, version, changed_at) " +
+            "VALUES (:type, :userId, :email, :firstName, :lastName, :birthDate, :address, :phoneNumber, :version, CURRENT_TIMESTAMP(6))";
+
+    private final R2dbcEntityTemplate entityTemplate;
+
+    @Override
+    public Mono<Long> nextId() {
+        return entityTemplate.getDatabaseClient()
+                .sql("SELECT NEXTVAL(user_id_seq)")
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    @Override
+    public Mono<Long> updateUserFields(Long id, UpdateUserRequest changes, Long expectedVersion) {
+        Map<String, Object> columns = new LinkedHashMap<>();
+        if (changes.getEmail() != null) {
+            columns.put("email", changes.getEmail());
+        }
+        if (changes.getFirstName() != null) {
+            columns.put("first_name", changes.getFirstName());
+        }
+        if (changes.getLastName() != null) {
+            columns.put("last_name", changes.getLastName());
+        }
+        if (changes.getBirthDate() != null) {
+            columns.put("birth_date", changes.getBirthDate());
+        }
+        if (UserRepositoryCustomImpl.isPresent(changes.getAddress())) {
+            columns.put("address", changes.getAddress().get());
+        }
+        if (UserRepositoryCustomImpl.isPresent(changes.getPhoneNumber())) {
+            columns.put("phone_number", changes.getPhoneNumber().get());
+        }
+
+        String matches = "WHERE id = :id" + (expectedVersion != null ? " AND version = :expectedVersion" : "");
+        DatabaseClient.GenericExecuteSpec statement;
+        if (columns.isEmpty()) {
+            statement = entityTemplate.getDatabaseClient().sql("SELECT COUNT(*) FROM users " + matches);
+        } else {
+            statement = entityTemplate.getDatabaseClient().sql("UPDATE users SET " +
+                    columns.keySet().stream().map(column -> column + " = :" + column).collect(Collectors.joining(", ")) +
+                    ", version = version + 1 " + matches);
+            for (Map.Entry<String, Object> column : columns.entrySet()) {
+                statement = statement.bind(column.getKey(), column.getValue());
+            }
+        }
+        statement = statement.bind("id", id);
+        if (expectedVersion != null) {
+            statement = statement.bind("expectedVersion", expectedVersion);
+        }
+        return columns.isEmpty() ? statement.map(row -> row.get(0, Long.class)).one() : statement.fetch().rowsUpdated();
+    }
+
+    @Override
+    public Mono<Long> recordChange(UserChangeType type, Long userId) {
+        DatabaseClient databaseClient = entityTemplate.getDatabaseClient();
+        return databaseClient.sql(UserReactiveRepository.SELECT_USER + "FROM users WHERE id = :id FOR UPDATE")
+                .bind("id", userId)
+                .map((row, metadata) -> entityTemplate.getConverter().read(UserReactiveEntity.class, row, metadata))
+                .one()
+                .flatMap(user -> databaseClient.sql(INSERT_CHANGE)
+                        .bind("type", type.name())
+                        .bind("userId", user.getId())
+                        .bind("email", user.getEmail())
+                        .bind("firstName", user.getFirstName())
+                        .bind("lastName", user.getLastName())
+                        .bind("birthDate", user.getBirthDate())
+                        .bind("address", Parameters.in(R2dbcType.VARCHAR, user.getAddress()))
+                        .bind("phoneNumber", Parameters.in(R2dbcType.VARCHAR, user.getPhoneNumber()))
+                        .bind("version", user.getVersion())
+                        .fetch()
+                        .rowsUpdated())
+                .defaultIfEmpty(0L);
+    }
+}
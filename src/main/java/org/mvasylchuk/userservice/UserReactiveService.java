@@ -0,0 +1,179 @@
+package org.mvasylchuk.userservice;
+
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.mvasylchuk.userservice.dto.UserPage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of {@link UserService} on R2DBC, with the same validation rules and change recording.
+ * <p>
+ * Birthday searches are streamed in keyset pages of {@code userService.reactive.streamPageSize} users. The next page
+ * is queried only after the subscriber has requested the current one, so a slow consumer holds neither a thread nor a
+ * connection while it reads.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class UserReactiveService {
+    private final int minAge;
+    private final int maxPageSize;
+    private final int streamPageSize;
+    private final UserReactiveRepository userRepository;
+    private final TransactionalOperator transactionalOperator;
+    private final UserEmailFilter userEmailFilter;
+
+    public UserReactiveService(@Value("${userService.minAge}") int minAge,
+                               @Value("${userService.maxPageSize}") int maxPageSize,
+                               @Value("${userService.reactive.streamPageSize}") int streamPageSize,
+                               UserReactiveRepository userRepository,
+                               TransactionalOperator transactionalOperator,
+                               UserEmailFilter userEmailFilter) {
+        this.minAge = minAge;
+        this.maxPageSize = maxPageSize;
+        this.streamPageSize = streamPageSize;
+        this.userRepository = userRepository;
+        this.transactionalOperator = transactionalOperator;
+        this.userEmailFilter = userEmailFilter;
+    }
+
+    public Mono<UserDto> getUser(Long id) {
+        return userRepository.findById(id)
+                .map(UserMapper::toDto)
+                .switchIfEmpty(Mono.error(() -> new UserServiceException(UserRejectionReason.NOT_FOUND, UserService.NOT_FOUND_ERROR)));
+    }
+
+    public Mono<UserDto> createUser(CreateUserRequest request) {
+        if (isTooYoung(request.getBirthDate())) {
+            return Mono.error(new UserServiceException(UserRejectionReason.MIN_AGE, UserService.MIN_AGE_ERROR));
+        }
+        Mono<Boolean> taken = userEmailFilter.mightContain(request.getEmail())
+                ? userRepository.existsByEmail(request.getEmail())
+                : Mono.just(false);
+        return taken
+                .flatMap(exists -> {
+                    if (exists) {
+                        return Mono.error(new UserServiceException(UserRejectionReason.DUPLICATE_EMAIL, UserService.EMAIL_EXISTS_ERROR));
+                    }
+                    return userRepository.nextId()
+                            .flatMap(id -> userRepository.save(UserMapper.toReactiveEntity(id, request)))
+                            .flatMap(user -> userRepository.recordChange(UserChangeType.CREATED, user.getId())
+                                    .thenReturn(user))
+                            .as(transactionalOperator::transactional);
+                })
+                .onErrorMap(DataIntegrityViolationException.class, e -> new UserServiceException(UserRejectionReason.DUPLICATE_EMAIL, UserService.EMAIL_EXISTS_ERROR))
+                .doOnNext(user -> userEmailFilter.put(user.getEmail()))
+                .map(UserMapper::toDto);
+    }
+
+    /**
+     * @param expectedVersion version the user must still have, or {@code null} to overwrite any version
+     */
+    public Mono<UserDto> updateAllUserFields(Long id, CreateUserRequest request, Long expectedVersion) {
+        if (isTooYoung(request.getBirthDate())) {
+            return Mono.error(new UserServiceException(UserRejectionReason.MIN_AGE, UserService.MIN_AGE_ERROR));
+        }
+        return userRepository.updateAllFields(id,
+                        expectedVersion,
+                        request.getEmail(),
+                        request.getFirstName(),
+                        request.getLastName(),
+                        request.getBirthDate(),
+                        request.getAddress(),
+                        request.getPhoneNumber())
+                .flatMap(updated -> afterUpdate(id, updated))
+                .as(transactionalOperator::transactional)
+                .onErrorMap(DataIntegrityViolationException.class, e -> new UserServiceException(UserRejectionReason.DUPLICATE_EMAIL, UserService.EMAIL_EXISTS_ERROR));
+    }
+
+    /**
+     * @param expectedVersion version the user must still have, or {@code null} to update any version
+     */
+    public Mono<UserDto> updateSomeUserFields(Long id, UpdateUserRequest request, Long expectedVersion) {
+        if (request.getBirthDate() != null && isTooYoung(request.getBirthDate())) {
+            return Mono.error(new UserServiceException(UserRejectionReason.MIN_AGE, UserService.MIN_AGE_ERROR));
+        }
+        return userRepository.updateUserFields(id, request, expectedVersion)
+                .flatMap(updated -> afterUpdate(id, updated))
+                .as(transactionalOperator::transactional)
+                .onErrorMap(DataIntegrityViolationException.class, e -> new UserServiceException(UserRejectionReason.DUPLICATE_EMAIL, UserService.EMAIL_EXISTS_ERROR));
+    }
+
+    public Mono<Long> deleteUser(Long id) {
+        return userRepository.recordChange(UserChangeType.DELETED, id)
+                .then(userRepository.deleteOneById(id))
+                .as(transactionalOperator::transactional);
+    }
+
+    public Flux<UserDto> searchUsersByBirthday(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return Flux.error(new UserServiceException("From should not exceed to "));
+        }
+        // one page is read ahead of the subscriber at most
+        return findPage(BirthdayCursor.start(from), to, streamPageSize)
+                .expand(page -> page.size() < streamPageSize
+                        ? Mono.empty()
+                        : findPage(cursorAfter(page), to, streamPageSize))
+                .concatMapIterable(page -> page, 1)
+                .map(UserMapper::toDto);
+    }
+
+    public Mono<UserPage> searchUsersByBirthday(LocalDate from, LocalDate to, int limit, String next) {
+        if (from.isAfter(to)) {
+            return Mono.error(new UserServiceException("From should not exceed to "));
+        }
+        if (limit < 1 || limit > maxPageSize) {
+            return Mono.error(new UserServiceException("Limit should be between 1 and " + maxPageSize));
+        }
+        BirthdayCursor cursor;
+        try {
+            cursor = next == null ? BirthdayCursor.start(from) : BirthdayCursor.decode(next);
+        } catch (UserServiceException e) {
+            return Mono.error(e);
+        }
+        if (cursor.getBirthDate().isBefore(from)) {
+            cursor = BirthdayCursor.start(from);
+        }
+
+        return findPage(cursor, to, limit + 1).map(users -> {
+            if (users.size() <= limit) {
+                return new UserPage(users.stream().map(UserMapper::toDto).toList(), null);
+            }
+            List<UserReactiveEntity> page = users.subList(0, limit);
+            return new UserPage(page.stream().map(UserMapper::toDto).toList(), cursorAfter(page).encode());
+        });
+    }
+
+    private Mono<List<UserReactiveEntity>> findPage(BirthdayCursor cursor, LocalDate to, int limit) {
+        return userRepository.findPageByBirthDate(cursor.getBirthDate(), cursor.getId(), to, limit).collectList();
+    }
+
+    private static BirthdayCursor cursorAfter(List<UserReactiveEntity> page) {
+        UserReactiveEntity last = page.get(page.size() - 1);
+        return new BirthdayCursor(last.getBirthDate(), last.getId());
+    }
+
+    private Mono<UserDto> afterUpdate(Long id, long updated) {
+        if (updated == 0) {
+            return userRepository.existsById(id).flatMap(exists -> Mono.error(exists
+                    ? new UserVersionMismatchException("User was modified by another request")
+                    : new UserServiceException(UserRejectionReason.NOT_FOUND, UserService.NOT_FOUND_ERROR)));
+        }
+        return userRepository.recordChange(UserChangeType.UPDATED, id)
+                .then(getUser(id))
+                .doOnNext(user -> userEmailFilter.put(user.getEmail()));
+    }
+
+    private boolean isTooYoung(LocalDate birthDate) {
+        return birthDate.plusYears(minAge).isAfter(LocalDate.now());
+    }
+}
@@ -0,0 +1,143 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Coalescing of single-user reads that miss {@link UserCache}. Callers put their ids into a bounded queue and one
+ * reader thread takes them in batches: it waits up to {@code userService.coalescing.window} for more ids after the
+ * first one, up to {@code userService.coalescing.maxBatchSize}, and reads the batch with one {@code IN} query (one
+ * per shard in sharded mode), so concurrent lookups of different users cost one round trip. Concurrent lookups of the
+ * same user are already merged by the cache. When the queue is full, callers wait up to
+ * {@code userService.coalescing.enqueueTimeout} and are rejected after that, and reads that are not done within
+ * {@code userService.coalescing.readTimeout} fail the same way.
+ */
+@Component
+public class UserReadCoalescer {
+    private static final Logger log = LoggerFactory.getLogger(UserReadCoalescer.class);
+
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final Duration window;
+    private final Duration enqueueTimeout;
+    private final Executor readTimeouts;
+    private final BlockingQueue<PendingRead> queue;
+    private final UserRepository userRepository;
+    private final UserShardedStore userShardedStore;
+    private final Thread reader;
+
+    public UserReadCoalescer(@Value("${userService.coalescing.enabled}") boolean enabled,
+                             @Value("${userService.coalescing.maxBatchSize}") int maxBatchSize,
+                             @Value("${userService.coalescing.window}") Duration window,
+                             @Value("${userService.coalescing.queueCapacity}") int queueCapacity,
+                             @Value("${userService.coalescing.enqueueTimeout}") Duration enqueueTimeout,
+                             @Value("${userService.coalescing.readTimeout}") Duration readTimeout,
+                             UserRepository userRepository,
+                             UserShardedStore userShardedStore) {
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.window = window;
+        this.enqueueTimeout = enqueueTimeout;
+        this.readTimeouts = CompletableFuture.delayedExecutor(readTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.userRepository = userRepository;
+        this.userShardedStore = userShardedStore;
+        this.reader = new Thread(this::run, "user-read-coalescer");
+        if (enabled) {
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reads the user in the next batch. The future fails with {@link UserServiceBusyException} when the queue stays
+     * full for {@code userService.coalescing.enqueueTimeout} or the read takes longer than
+     * {@code userService.coalescing.readTimeout}.
+     */
+    public CompletableFuture<Optional<UserDto>> findUser(Long id) {
+        PendingRead pending = new PendingRead(id, new CompletableFuture<>());
+        try {
+            if (!queue.offer(pending, enqueueTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                pending.getResult().completeExceptionally(new UserServiceBusyException("Too many users are being read, retry later"));
+            } else {
+                readTimeouts.execute(() -> pending.getResult().completeExceptionally(
+                        new UserServiceBusyException("Reading the user took too long, retry later")));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.getResult().completeExceptionally(new IllegalStateException("Interrupted while reading a user", e));
+        }
+        return pending.getResult();
+    }
+
+    private void run() {
+        List<PendingRead> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + window.toNanos();
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    PendingRead next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                read(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        batch.addAll(queue);
+        batch.forEach(pending -> pending.getResult().completeExceptionally(
+                new UserServiceBusyException("User service is shutting down")));
+    }
+
+    private void read(List<PendingRead> batch) {
+        try {
+            Set<Long> ids = new HashSet<>();
+            batch.forEach(pending -> ids.add(pending.getId()));
+            List<UserDto> found = userShardedStore.isEnabled()
+                    ? userShardedStore.findUsers(ids)
+                    : userRepository.findAllDtosByIds(ids);
+            Map<Long, UserDto> users = new HashMap<>();
+            found.forEach(user -> users.put(user.getId(), user));
+            batch.forEach(pending -> pending.getResult().complete(Optional.ofNullable(users.get(pending.getId()))));
+        } catch (Throwable e) {
+            // the reader keeps running, so that one failed batch does not leave the callers of the next ones waiting
+            log.error("Coalesced read of {} users failed", batch.size(), e);
+            batch.forEach(pending -> pending.getResult().completeExceptionally(e));
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        reader.interrupt();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class PendingRead {
+        private final Long id;
+        private final CompletableFuture<Optional<UserDto>> result;
+    }
+}
@@ -0,0 +1,70 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Read-your-writes for clients that keep cookies: a mutating request gives the client a cookie for
+ * {@code userService.replicas.readYourWritesWindow}, and while the client sends it back its reads go to the primary
+ * instead of a replica that may not have its changes yet.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "userService.replicas.enabled", havingValue = "true")
+public class UserReadYourWritesFilter extends OncePerRequestFilter {
+    static final String COOKIE = "userService-primary-until";
+    private static final Set<String> READ_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final Duration window;
+
+    public UserReadYourWritesFilter(@Value("${userService.replicas.readYourWritesWindow}") Duration window) {
+        this.window = window;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!READ_METHODS.contains(request.getMethod())) {
+            // set before the body is written, a failed write keeping the client on the primary does no harm
+            Cookie cookie = new Cookie(COOKIE, String.valueOf(System.currentTimeMillis() + window.toMillis()));
+            cookie.setMaxAge((int) Math.max(1, window.toSeconds()));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+        }
+        UserReplicaDataSource.requirePrimary(wroteRecently(request));
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            UserReplicaDataSource.requirePrimary(false);
+        }
+    }
+
+    private static boolean wroteRecently(HttpServletRequest request) {
+        if (request.getCookies() == null) {
+            return false;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue()) > System.currentTimeMillis();
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+}
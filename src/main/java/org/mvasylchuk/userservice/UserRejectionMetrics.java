@@ -0,0 +1,45 @@
+package org.mvasylchuk.userservice;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.mvasylchuk.userservice.dto.CreateUserResult;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Counts requests and batch items rejected by validation or business rules as {@code user.rejections}, tagged with
+ * the reason, and requests that failed with an unexpected error as {@code user.errors}.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserRejectionMetrics {
+    private final MeterRegistry meterRegistry;
+
+    public void reject(UserRejectionReason reason) {
+        meterRegistry.counter("user.rejections", "reason", tag(reason)).increment();
+    }
+
+    public void error() {
+        meterRegistry.counter("user.errors").increment();
+    }
+
+    /**
+     * Counts the items of a batch create that were rejected or failed. Single creates of the group-commit path are
+     * counted as errors of {@link UserService} instead.
+     */
+    public void rejectBatchItems(List<CreateUserResult> results) {
+        for (CreateUserResult result : results) {
+            if (result.getReason() == UserRejectionReason.INTERNAL) {
+                error();
+            } else if (result.getReason() != null) {
+                reject(result.getReason());
+            }
+        }
+    }
+
+    static String tag(UserRejectionReason reason) {
+        return reason.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,16 @@
+package org.mvasylchuk.userservice;
+
+/**
+ * Why a request or batch item was refused, counted by {@link UserRejectionMetrics}. {@link #INTERNAL} marks batch
+ * items that failed with an unexpected error rather than a rejection.
+ */
+public enum UserRejectionReason {
+    VALIDATION,
+    MIN_AGE,
+    DUPLICATE_EMAIL,
+    NOT_FOUND,
+    VERSION_MISMATCH,
+    BUSY,
+    UNSUPPORTED,
+    INTERNAL
+}
@@ -0,0 +1,75 @@
+package org.mvasylchuk.userservice;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read/write splitting, enabled with {@code userService.replicas.enabled}. Read-only transactions, such as the
+ * birthday searches, run on the replicas of {@code userService.replicas.urls} through {@link UserReplicaDataSource},
+ * everything else runs on {@code spring.datasource}. The application {@link DataSource} only takes a connection at the
+ * first statement, by then it knows whether the transaction is read-only.
+ * <p>
+ * Reads outside of read-only transactions, e.g. user lookups that fill {@link UserCache} and the email checks of
+ * creates, stay on the primary: a replica that lags behind would let them cache or act on a stale user.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "userService.replicas.enabled", havingValue = "true")
+public class UserReplicaConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource userPrimaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    UserReplicaDataSource userReplicaDataSource(DataSourceProperties properties,
+                                                HikariDataSource userPrimaryDataSource,
+                                                @Value("${userService.replicas.urls}") List<String> urls,
+                                                @Value("${userService.replicas.maximumPoolSize}") int maximumPoolSize,
+                                                @Value("${userService.replicas.connectionTimeout}") Duration connectionTimeout,
+                                                @Value("${userService.replicas.healthCheckInterval}") Duration healthCheckInterval,
+                                                @Value("${userService.replicas.maxLag}") Duration maxLag) {
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("userService.replicas.urls should list at least one replica");
+        }
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : urls) {
+            HikariDataSource replica = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(url)
+                    .username(properties.determineUsername())
+                    .password(properties.determinePassword())
+                    .build();
+            replica.setPoolName("user-replica-" + (replicas.size() + 1));
+            replica.setMaximumPoolSize(maximumPoolSize);
+            replica.setConnectionTimeout(connectionTimeout.toMillis());
+            replica.setReadOnly(true);
+            // a replica that is down at startup is skipped until it is back, it does not stop the service
+            replica.setInitializationFailTimeout(-1);
+            replicas.add(replica);
+        }
+        return new UserReplicaDataSource(userPrimaryDataSource, replicas, healthCheckInterval, maxLag);
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(HikariDataSource userPrimaryDataSource, UserReplicaDataSource userReplicaDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(userPrimaryDataSource);
+        dataSource.setReadOnlyDataSource(userReplicaDataSource);
+        return dataSource;
+    }
+}
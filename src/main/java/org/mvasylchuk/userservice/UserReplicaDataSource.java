@@ -0,0 +1,140 @@
+package org.mvasylchuk.userservice;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connections of read-only transactions, see {@link UserReplicaConfiguration}. Replicas are taken round-robin and the
+ * ones that are down are skipped: a replica goes down when connecting to it fails or when a health check finds it not
+ * replicating or more than {@code userService.replicas.maxLag} behind, and comes back with the first passing check. A
+ * replica whose pool has no connection left is only skipped for that connection, as it is busy rather than down.
+ * Connections come from the primary when no replica gives one and while the current thread
+ * {@linkplain #requirePrimary requires the primary}.
+ */
+public class UserReplicaDataSource extends AbstractDataSource implements AutoCloseable {
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthCheck;
+
+    public UserReplicaDataSource(DataSource primary, List<HikariDataSource> replicas, Duration healthCheckInterval, Duration maxLag) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.maxLagSeconds = maxLag.toSeconds();
+        this.healthCheck = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthCheck.scheduleWithFixedDelay(this::checkHealth, 0, healthCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Makes read-only transactions started by the current thread use the primary, until it is called with
+     * {@code false}.
+     */
+    public static void requirePrimary(boolean required) {
+        if (required) {
+            PRIMARY_REQUIRED.set(true);
+        } else {
+            PRIMARY_REQUIRED.remove();
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (PRIMARY_REQUIRED.get() == null) {
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+                if (!replica.healthy) {
+                    continue;
+                }
+                try {
+                    return replica.dataSource.getConnection();
+                } catch (SQLException e) {
+                    if (!isPoolExhausted(e)) {
+                        replica.healthy = false;
+                    }
+                }
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica connections use the configured credentials");
+    }
+
+    /**
+     * Pool names of the replicas that are up.
+     */
+    public List<String> getHealthyReplicas() {
+        return replicas.stream().filter(replica -> replica.healthy).map(replica -> replica.dataSource.getPoolName()).toList();
+    }
+
+    void checkHealth() {
+        for (Replica replica : replicas) {
+            try {
+                replica.healthy = isHealthy(replica.dataSource);
+            } catch (SQLException e) {
+                if (!isPoolExhausted(e)) {
+                    replica.healthy = false;
+                }
+            }
+        }
+    }
+
+    private boolean isHealthy(DataSource replica) throws SQLException {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet status = statement.executeQuery("SHOW SLAVE STATUS")) {
+            if (!status.next()) {
+                // not replicating from anywhere, e.g. a standalone database standing in for a replica
+                return true;
+            }
+            long lag = status.getLong("Seconds_Behind_Master");
+            return !status.wasNull() && lag <= maxLagSeconds;
+        }
+    }
+
+    /**
+     * Whether the pool timed out waiting for a connection of its own: Hikari then reports the last failure to connect
+     * as the cause, and none while the database accepts connections.
+     */
+    private static boolean isPoolExhausted(SQLException e) {
+        return e instanceof SQLTransientConnectionException && e.getCause() == null;
+    }
+
+    @Override
+    public void close() {
+        healthCheck.shutdownNow();
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    private static class Replica {
+        private final HikariDataSource dataSource;
+        private volatile boolean healthy = true;
+
+        private Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -1,11 +1,101 @@
 package org.mvasylchuk.userservice;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
-public interface UserRepository extends JpaRepository<UserEntity,Long> {
-    List<UserEntity> findAllByBirthDateIsBetween(LocalDate from, LocalDate to);
+public interface UserRepository extends JpaRepository<UserEntity,Long>, UserRepositoryCustom {
+    String SELECT_USER_DTO = "select new org.mvasylchuk.userservice.dto.UserDto(u.id, u.email, u.firstName, u.lastName, u.birthDate, u.address, u.phoneNumber, u.version) ";
+
+    @Query(SELECT_USER_DTO +
+            "from UserEntity u where u.birthDate between :from and :to")
+    List<UserDto> findAllByBirthDateIsBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
     boolean existsByEmail(String email);
+
+    @Query(SELECT_USER_DTO +
+            "from UserEntity u where u.id = :id")
+    Optional<UserDto> findDtoById(@Param("id") Long id);
+
+    @Query(SELECT_USER_DTO +
+            "from UserEntity u where u.email = :email")
+    Optional<UserDto> findDtoByEmail(@Param("email") String email);
+
+    @Query(SELECT_USER_DTO +
+            "from UserEntity u where u.id in :ids")
+    List<UserDto> findAllDtosByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("select u.version from UserEntity u where u.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Modifying
+    @Query("update UserEntity u " +
+            "set u.email = :email, u.firstName = :firstName, u.lastName = :lastName, " +
+            "u.birthDate = :birthDate, u.address = :address, u.phoneNumber = :phoneNumber, " +
+            "u.version = u.version + 1 " +
+            "where u.id = :id and (:expectedVersion is null or u.version = :expectedVersion)")
+    int updateAllFields(@Param("id") Long id,
+                        @Param("expectedVersion") Long expectedVersion,
+                        @Param("email") String email,
+                        @Param("firstName") String firstName,
+                        @Param("lastName") String lastName,
+                        @Param("birthDate") LocalDate birthDate,
+                        @Param("address") String address,
+                        @Param("phoneNumber") String phoneNumber);
+
+    @Modifying
+    @Query("delete from UserEntity u where u.id = :id")
+    int deleteOneById(@Param("id") Long id);
+
+    @Modifying
+    @Query("delete from UserEntity u where u.id in :ids")
+    int deleteAllByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("select u.id from UserEntity u where u.birthDate between :from and :to order by u.birthDate, u.id")
+    List<Long> findIdsByBirthDateBetween(@Param("from") LocalDate from, @Param("to") LocalDate to, Limit limit);
+
+    @Query("select u.email from UserEntity u where u.email in :emails")
+    Set<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    @Query(SELECT_USER_DTO +
+            "from UserEntity u " +
+            "where u.birthDate between :afterDate and :to " +
+            "and (u.birthDate > :afterDate or u.id > :afterId) " +
+            "order by u.birthDate, u.id")
+    List<UserDto> findPageByBirthDate(@Param("afterDate") LocalDate afterDate,
+                                      @Param("afterId") long afterId,
+                                      @Param("to") LocalDate to,
+                                      Limit limit);
+
+    @Query(SELECT_USER_DTO +
+            "from UserEntity u " +
+            "where u.birthMonthDay between :afterMonthDay and :toMonthDay " +
+            "and (u.birthMonthDay > :afterMonthDay or u.id > :afterId) " +
+            "order by u.birthMonthDay, u.id")
+    List<UserDto> findPageByBirthMonthDay(@Param("afterMonthDay") int afterMonthDay,
+                                          @Param("afterId") long afterId,
+                                          @Param("toMonthDay") int toMonthDay,
+                                          Limit limit);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(SELECT_USER_DTO +
+            "from UserEntity u " +
+            "where u.birthDate between :from and :to " +
+            "order by u.birthDate, u.id")
+    Stream<UserDto> streamAllByBirthDateIsBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
 }
@@ -0,0 +1,22 @@
+package org.mvasylchuk.userservice;
+
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.mvasylchuk.userservice.dto.UserDto;
+
+import java.util.List;
+
+public interface UserRepositoryCustom {
+    /**
+     * Updates only the columns present in {@code changes} with a single UPDATE statement and increments the version.
+     *
+     * @param expectedVersion version the row must still have, or {@code null} to update any version
+     * @return the number of matched rows, {@code 0} when the user does not exist or has another version
+     */
+    int updateUserFields(Long id, UpdateUserRequest changes, Long expectedVersion);
+
+    /**
+     * Returns up to {@code limit} users whose field of the cursor starts with the lowercase {@code prefix}, after the
+     * cursor in the order of the field and id, leaving out the users that match by a field of a higher rank.
+     */
+    List<UserDto> findPageByPrefix(UserSearchCursor cursor, String prefix, int limit);
+}
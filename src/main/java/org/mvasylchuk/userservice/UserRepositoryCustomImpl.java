@@ -0,0 +1,108 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.mvasylchuk.userservice.dto.UserDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+class UserRepositoryCustomImpl implements UserRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int updateUserFields(Long id, UpdateUserRequest changes, Long expectedVersion) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<UserEntity> update = criteriaBuilder.createCriteriaUpdate(UserEntity.class);
+        Root<UserEntity> user = update.from(UserEntity.class);
+
+        boolean changed = false;
+        if (changes.getEmail() != null) {
+            update.set(user.<String>get("email"), changes.getEmail());
+            changed = true;
+        }
+        if (changes.getFirstName() != null) {
+            update.set(user.<String>get("firstName"), changes.getFirstName());
+            changed = true;
+        }
+        if (changes.getLastName() != null) {
+            update.set(user.<String>get("lastName"), changes.getLastName());
+            changed = true;
+        }
+        if (changes.getBirthDate() != null) {
+            update.set(user.get("birthDate"), changes.getBirthDate());
+            changed = true;
+        }
+        if (isPresent(changes.getAddress())) {
+            update.set(user.<String>get("address"), changes.getAddress().get());
+            changed = true;
+        }
+        if (isPresent(changes.getPhoneNumber())) {
+            update.set(user.<String>get("phoneNumber"), changes.getPhoneNumber().get());
+            changed = true;
+        }
+
+        if (!changed) {
+            return entityManager.createQuery("select count(u) from UserEntity u " +
+                            "where u.id = :id and (:expectedVersion is null or u.version = :expectedVersion)", Long.class)
+                    .setParameter("id", id)
+                    .setParameter("expectedVersion", expectedVersion)
+                    .getSingleResult()
+                    .intValue();
+        }
+        update.set(user.<Long>get("version"), criteriaBuilder.sum(user.<Long>get("version"), 1L));
+        Predicate matches = criteriaBuilder.equal(user.get("id"), id);
+        if (expectedVersion != null) {
+            matches = criteriaBuilder.and(matches, criteriaBuilder.equal(user.get("version"), expectedVersion));
+        }
+        update.where(matches);
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    @Override
+    public List<UserDto> findPageByPrefix(UserSearchCursor cursor, String prefix, int limit) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<UserDto> query = criteriaBuilder.createQuery(UserDto.class);
+        Root<UserEntity> user = query.from(UserEntity.class);
+        query.select(criteriaBuilder.construct(UserDto.class,
+                user.get("id"),
+                user.get("email"),
+                user.get("firstName"),
+                user.get("lastName"),
+                user.get("birthDate"),
+                user.get("address"),
+                user.get("phoneNumber"),
+                user.get("version")));
+
+        String pattern = UserSearchField.likePattern(prefix);
+        Path<String> value = user.get(cursor.getField().getAttribute());
+        Path<Long> id = user.get("id");
+        List<Predicate> matches = new ArrayList<>();
+        matches.add(criteriaBuilder.greaterThanOrEqualTo(value, cursor.getValue()));
+        matches.add(criteriaBuilder.like(value, pattern, UserSearchField.LIKE_ESCAPE));
+        matches.add(criteriaBuilder.or(criteriaBuilder.greaterThan(value, cursor.getValue()),
+                criteriaBuilder.greaterThan(id, cursor.getId())));
+        for (UserSearchField higher : UserSearchField.values()) {
+            if (higher == cursor.getField()) {
+                break;
+            }
+            matches.add(criteriaBuilder.notLike(user.get(higher.getAttribute()), pattern, UserSearchField.LIKE_ESCAPE));
+        }
+        query.where(matches.toArray(Predicate[]::new))
+                .orderBy(criteriaBuilder.asc(value), criteriaBuilder.asc(id));
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    static boolean isPresent(Optional<String> value) {
+        return value != null && value.isPresent();
+    }
+}
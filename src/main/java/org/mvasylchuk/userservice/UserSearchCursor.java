@@ -0,0 +1,40 @@
+package org.mvasylchuk.userservice;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset position in the ordering of the user prefix search, by the rank of the matched field, then the lowercase
+ * value of the field and id, exchanged with clients as an opaque token.
+ */
+@Getter
+@AllArgsConstructor
+class UserSearchCursor {
+    private static final String SEPARATOR = ":";
+
+    private final UserSearchField field;
+    private final String value;
+    private final long id;
+
+    static UserSearchCursor start(UserSearchField field, String prefix) {
+        return new UserSearchCursor(field, prefix, Long.MIN_VALUE);
+    }
+
+    static UserSearchCursor decode(String token) throws UserServiceException {
+        try {
+            String[] decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR, 3);
+            return new UserSearchCursor(UserSearchField.valueOf(decoded[0]), decoded[2], Long.parseLong(decoded[1]));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new UserServiceException("Next token is invalid");
+        }
+    }
+
+    String encode() {
+        // the value goes last as it may contain the separator
+        String raw = field + SEPARATOR + id + SEPARATOR + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,41 @@
+package org.mvasylchuk.userservice;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.mvasylchuk.userservice.dto.UserDto;
+
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * Fields of the user prefix search in the order of their rank, with the lowercase copies of
+ * {@code V9__add_users_search_columns.sql} that are searched.
+ */
+@Getter
+@AllArgsConstructor
+enum UserSearchField {
+    EMAIL("emailLower", "email_lower", UserDto::getEmail),
+    LAST_NAME("lastNameLower", "last_name_lower", UserDto::getLastName),
+    FIRST_NAME("firstNameLower", "first_name_lower", UserDto::getFirstName);
+
+    static final char LIKE_ESCAPE = '!';
+
+    private final String attribute;
+    private final String column;
+    private final Function<UserDto, String> value;
+
+    String lowercaseValue(UserDto user) {
+        return value.apply(user).toLowerCase(Locale.ROOT);
+    }
+
+    static String normalize(String query) {
+        return query.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * LIKE pattern, escaped with {@value #LIKE_ESCAPE}, of the values that start with the prefix.
+     */
+    static String likePattern(String prefix) {
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+}
@@ -1,129 +1,486 @@
 package org.mvasylchuk.userservice;
 
+import io.micrometer.core.annotation.Timed;
 import org.mvasylchuk.userservice.dto.CreateUserRequest;
 import org.mvasylchuk.userservice.dto.UpdateUserRequest;
 import org.mvasylchuk.userservice.dto.UserDto;
+import org.mvasylchuk.userservice.dto.UserMultiGetResult;
+import org.mvasylchuk.userservice.dto.UserPage;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
+@Timed("user.service")
 public class UserService {
+    static final String MIN_AGE_ERROR = "To register you have to be 18 years old";
+    static final String EMAIL_EXISTS_ERROR = "Users with provided email is exist";
+    static final String NOT_FOUND_ERROR = "User is not found";
+    static final int MAX_UPCOMING_DAYS = 366;
+    private static final int FIRST_MONTH_DAY = 101;
+    private static final int LAST_MONTH_DAY = 1231;
+    private static final int FEBRUARY_29 = 229;
+
     private final int minAge;
+    private final int maxPageSize;
+    private final int multiGetChunkSize;
     private final UserRepository userRepository;
+    private final UserCache userCache;
+    private final UserChangeService userChangeService;
+    private final UserGroupCommitWriter userGroupCommitWriter;
+    private final UserShardedStore userShardedStore;
+    private final UserBirthdayIndex userBirthdayIndex;
+    private final UserEmailFilter userEmailFilter;
+    private final UserReadCoalescer userReadCoalescer;
+    private final TransactionTemplate transactionTemplate;
 
-    public UserService(@Value("${userService.minAge}") int minAge, UserRepository userRepository) {
+    public UserService(@Value("${userService.minAge}") int minAge,
+                       @Value("${userService.maxPageSize}") int maxPageSize,
+                       @Value("${userService.multiGet.chunkSize}") int multiGetChunkSize,
+                       UserRepository userRepository,
+                       UserCache userCache,
+                       UserChangeService userChangeService,
+                       UserGroupCommitWriter userGroupCommitWriter,
+                       UserShardedStore userShardedStore,
+                       UserBirthdayIndex userBirthdayIndex,
+                       UserEmailFilter userEmailFilter,
+                       UserReadCoalescer userReadCoalescer,
+                       PlatformTransactionManager transactionManager) {
         this.minAge = minAge;
+        this.maxPageSize = maxPageSize;
+        this.multiGetChunkSize = multiGetChunkSize;
         this.userRepository = userRepository;
+        this.userCache = userCache;
+        this.userChangeService = userChangeService;
+        this.userGroupCommitWriter = userGroupCommitWriter;
+        this.userShardedStore = userShardedStore;
+        this.userBirthdayIndex = userBirthdayIndex;
+        this.userEmailFilter = userEmailFilter;
+        this.userReadCoalescer = userReadCoalescer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Reads the user through the cache. A miss is read in a batch with other concurrent misses when
+     * {@code userService.coalescing.enabled} is set, see {@link UserReadCoalescer}.
+     */
+    public UserDto getUser(Long id) throws UserServiceException {
+        try {
+            return userCache.get(id, this::loadUser).orElseThrow(() -> new UserServiceException(UserRejectionReason.NOT_FOUND, NOT_FOUND_ERROR));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UserServiceBusyException busy) {
+                throw busy;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the distinct ids through the cache, in request order, and loads the misses with {@code IN} queries of up
+     * to {@code userService.multiGet.chunkSize} ids. Ids without a user are reported in request order as well.
+     */
+    public UserMultiGetResult getUsers(List<Long> ids) throws UserServiceException {
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        if (distinctIds.contains(null)) {
+            throw new UserServiceException("Ids should not be empty");
+        }
+        if (distinctIds.isEmpty() || distinctIds.size() > maxPageSize) {
+            throw new UserServiceException("Number of ids should be between 1 and " + maxPageSize);
+        }
+        Map<Long, Optional<UserDto>> found = userCache.getAll(distinctIds, this::loadUsers);
+        List<UserDto> users = new ArrayList<>(distinctIds.size());
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : distinctIds) {
+            found.get(id).ifPresentOrElse(users::add, () -> missingIds.add(id));
+        }
+        return new UserMultiGetResult(users, missingIds);
+    }
+
+    /**
+     * Finds the user by email, ignoring case. Always asks the database: {@link UserEmailFilter} may miss the emails
+     * of other writers.
+     */
+    @Transactional(readOnly = true)
+    public UserDto getUserByEmail(String email) throws UserServiceException {
+        Optional<UserDto> user = userShardedStore.isEnabled()
+                ? userShardedStore.findUserByEmail(email)
+                : userRepository.findDtoByEmail(email);
+        return user.orElseThrow(() -> new UserServiceException(UserRejectionReason.NOT_FOUND, NOT_FOUND_ERROR));
+    }
+
+    private Optional<UserDto> loadUser(Long id) {
+        if (userReadCoalescer.isEnabled()) {
+            try {
+                return userReadCoalescer.findUser(id).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        if (userShardedStore.isEnabled()) {
+            return userShardedStore.findUser(id);
+        }
+        return userRepository.findDtoById(id);
+    }
+
+    private Map<Long, Optional<UserDto>> loadUsers(Set<Long> ids) {
+        Map<Long, Optional<UserDto>> users = new HashMap<>();
+        List<Long> chunk = new ArrayList<>(Math.min(ids.size(), multiGetChunkSize));
+        for (Long id : ids) {
+            users.put(id, Optional.empty());
+            chunk.add(id);
+            if (chunk.size() == multiGetChunkSize) {
+                findUsers(chunk).forEach(user -> users.put(user.getId(), Optional.of(user)));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            findUsers(chunk).forEach(user -> users.put(user.getId(), Optional.of(user)));
+        }
+        return users;
+    }
+
+    private List<UserDto> findUsers(List<Long> ids) {
+        if (userShardedStore.isEnabled()) {
+            return userShardedStore.findUsers(ids);
+        }
+        return userRepository.findAllDtosByIds(ids);
     }
 
+    /**
+     * Creates the user with its own transaction, or in a group with other concurrent creates when
+     * {@code userService.groupCommit.enabled} is set. Sharded mode creates it on the shards instead.
+     */
     public UserDto createUser(CreateUserRequest request) throws UserServiceException {
         if (request.getBirthDate().plusYears(minAge).isAfter(LocalDate.now())) {
-            throw new UserServiceException("To register you have to be 18 years old");
+            throw new UserServiceException(UserRejectionReason.MIN_AGE, MIN_AGE_ERROR);
+        }
+        if (userShardedStore.isEnabled()) {
+            UserDto user = userShardedStore.createUser(request);
+            userCache.invalidate(user.getId());
+            return user;
         }
-        if (userRepository.existsByEmail(request.getEmail())) {
-            throw new UserServiceException("Users with provided email is exist");
+        if (userGroupCommitWriter.isEnabled()) {
+            UserDto user = userGroupCommitWriter.createUser(request);
+            userBirthdayIndex.put(user);
+            return user;
         }
-        UserEntity userEntity = new UserEntity(null,
-                request.getEmail(),
-                request.getFirstName(),
-                request.getLastName(),
-                request.getBirthDate(),
-                request.getAddress(),
-                request.getPhoneNumber());
+        if (userEmailFilter.mightContain(request.getEmail()) && userRepository.existsByEmail(request.getEmail())) {
+            throw new UserServiceException(UserRejectionReason.DUPLICATE_EMAIL, EMAIL_EXISTS_ERROR);
+        }
+        UserEntity userEntity = UserMapper.toEntity(request);
 
-        userRepository.save(userEntity);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                userRepository.save(userEntity);
+                userChangeService.recordChanges(UserChangeType.CREATED, List.of(userEntity.getId()));
+            });
+        } catch (DataIntegrityViolationException e) {
+            // registered concurrently, or by a writer the filter has not seen yet
+            userEmailFilter.put(request.getEmail());
+            throw new UserServiceException(UserRejectionReason.DUPLICATE_EMAIL, EMAIL_EXISTS_ERROR);
+        }
+        userCache.invalidate(userEntity.getId());
+        userEmailFilter.put(userEntity.getEmail());
 
-        return new UserDto(userEntity.getId(),
-                userEntity.getEmail(),
-                userEntity.getFirstName(),
-                userEntity.getLastName(),
-                userEntity.getBirthDate(),
-                userEntity.getAddress(),
-                userEntity.getPhoneNumber());
+        UserDto user = UserMapper.toDto(userEntity);
+        userBirthdayIndex.put(user);
+        return user;
 
     }
 
+    @Transactional(rollbackFor = UserServiceException.class)
     public UserDto updateAllUserFields(Long id, CreateUserRequest request) throws UserServiceException {
+        return updateAllUserFields(id, request, null);
+    }
+
+    /**
+     * @param expectedVersion version the user must still have, or {@code null} to overwrite any version
+     */
+    @Transactional(rollbackFor = UserServiceException.class)
+    public UserDto updateAllUserFields(Long id, CreateUserRequest request, Long expectedVersion) throws UserServiceException {
         if (request.getBirthDate().plusYears(minAge).isAfter(LocalDate.now())) {
-            throw new UserServiceException("To register you have to be 18 years old");
+            throw new UserServiceException(UserRejectionReason.MIN_AGE, MIN_AGE_ERROR);
+        }
+        if (userShardedStore.isEnabled()) {
+            UserDto user = userShardedStore.updateAllUserFields(id, request, expectedVersion);
+            userCache.put(user);
+            return user;
+        }
+        int updated;
+        try {
+            updated = userRepository.updateAllFields(id,
+                    expectedVersion,
+                    request.getEmail(),
+                    request.getFirstName(),
+                    request.getLastName(),
+                    request.getBirthDate(),
+                    request.getAddress(),
+                    request.getPhoneNumber());
+        } catch (DataIntegrityViolationException e) {
+            throw new UserServiceException(UserRejectionReason.DUPLICATE_EMAIL, EMAIL_EXISTS_ERROR);
         }
-        UserEntity userEntity = userRepository.findById(id).orElseThrow(() -> new UserServiceException("User is not found"));
+        if (updated == 0) {
+            throw notUpdated(id);
+        }
+        userChangeService.recordChanges(UserChangeType.UPDATED, List.of(id));
 
-        userEntity.setFirstName(request.getFirstName());
-        userEntity.setLastName(request.getLastName());
-        userEntity.setEmail(request.getEmail());
-        userEntity.setBirthDate(request.getBirthDate());
-        userEntity.setAddress(request.getAddress());
-        userEntity.setPhoneNumber(request.getPhoneNumber());
+        Long version = expectedVersion != null
+                ? expectedVersion + 1
+                : userRepository.findVersionById(id).orElseThrow(() -> new UserServiceException(UserRejectionReason.NOT_FOUND, NOT_FOUND_ERROR));
+        UserDto user = UserMapper.toDto(id, request, version);
+        userCache.put(user);
+        userBirthdayIndex.put(user);
+        userEmailFilter.put(user.getEmail());
+        return user;
+    }
 
-        userRepository.save(userEntity);
+    /**
+     * @return the number of deleted users, 0 when there is no such user
+     */
+    @Transactional
+    public int deleteUser(Long id) {
+        if (userShardedStore.isEnabled()) {
+            int deleted = userShardedStore.deleteUser(id);
+            userCache.invalidate(id);
+            return deleted;
+        }
+        userChangeService.recordChanges(UserChangeType.DELETED, List.of(id));
+        int deleted = userRepository.deleteOneById(id);
+        userCache.invalidate(id);
+        userBirthdayIndex.remove(id);
+        return deleted;
+    }
 
-        return new UserDto(userEntity.getId(),
-                userEntity.getEmail(),
-                userEntity.getFirstName(),
-                userEntity.getLastName(),
-                userEntity.getBirthDate(),
-                userEntity.getAddress(),
-                userEntity.getPhoneNumber());
+    @Transactional(rollbackFor = UserServiceException.class)
+    public UserDto updateSomeUserFields(Long id, UpdateUserRequest request) throws UserServiceException {
+        return updateSomeUserFields(id, request, null);
     }
 
-    public void deleteUser(Long id) {
-        userRepository.deleteById(id);
+    /**
+     * @param expectedVersion version the user must still have, or {@code null} to update any version
+     */
+    @Transactional(rollbackFor = UserServiceException.class)
+    public UserDto updateSomeUserFields(Long id, UpdateUserRequest request, Long expectedVersion) throws UserServiceException {
+        if (request.getBirthDate() != null && request.getBirthDate().plusYears(minAge).isAfter(LocalDate.now())) {
+            throw new UserServiceException(UserRejectionReason.MIN_AGE, MIN_AGE_ERROR);
+        }
+        if (userShardedStore.isEnabled()) {
+            UserDto user = userShardedStore.updateSomeUserFields(id, request, expectedVersion);
+            userCache.put(user);
+            return user;
+        }
+        int updated;
+        try {
+            updated = userRepository.updateUserFields(id, request, expectedVersion);
+        } catch (DataIntegrityViolationException e) {
+            throw new UserServiceException(UserRejectionReason.DUPLICATE_EMAIL, EMAIL_EXISTS_ERROR);
+        }
+        if (updated == 0) {
+            throw notUpdated(id);
+        }
+        userChangeService.recordChanges(UserChangeType.UPDATED, List.of(id));
+
+        UserDto user = userRepository.findDtoById(id).orElseThrow(() -> new UserServiceException(UserRejectionReason.NOT_FOUND, NOT_FOUND_ERROR));
+        userCache.put(user);
+        userBirthdayIndex.put(user);
+        userEmailFilter.put(user.getEmail());
+        return user;
     }
 
-    public UserDto updateSomeUserFields(Long id, UpdateUserRequest request) throws UserServiceException {
+    private UserServiceException notUpdated(Long id) {
+        if (userRepository.findVersionById(id).isPresent()) {
+            return new UserVersionMismatchException("User was modified by another request");
+        }
+        return new UserServiceException(UserRejectionReason.NOT_FOUND, NOT_FOUND_ERROR);
+    }
 
-        UserEntity userEntity = userRepository.findById(id).orElseThrow(() -> new UserServiceException("User is not found"));
+    @Transactional(readOnly = true)
+    public List<UserDto> searchUsersByBirthday(LocalDate from, LocalDate to) throws UserServiceException {
+        if (from.isAfter(to)) {
+            throw new UserServiceException("From should not exceed to ");
+        }
+        if (userShardedStore.isEnabled()) {
+            return userShardedStore.searchUsersByBirthday(from, to);
+        }
+        if (userBirthdayIndex.isReady()) {
+            return userBirthdayIndex.searchUsersByBirthday(from, to);
+        }
+
+        return userRepository.findAllByBirthDateIsBetween(from, to);
+    }
 
-        if (request.getEmail() != null) {
-            userEntity.setEmail(request.getEmail());
+    @Transactional(readOnly = true)
+    public UserPage searchUsersByBirthday(LocalDate from, LocalDate to, int limit, String next) throws UserServiceException {
+        if (from.isAfter(to)) {
+            throw new UserServiceException("From should not exceed to ");
         }
-        if (request.getFirstName() != null) {
-            userEntity.setFirstName(request.getFirstName());
+        if (limit < 1 || limit > maxPageSize) {
+            throw new UserServiceException("Limit should be between 1 and " + maxPageSize);
         }
-        if (request.getLastName() != null) {
-            userEntity.setLastName(request.getLastName());
+        BirthdayCursor cursor = next == null ? BirthdayCursor.start(from) : BirthdayCursor.decode(next);
+        if (cursor.getBirthDate().isBefore(from)) {
+            cursor = BirthdayCursor.start(from);
         }
-        if (request.getBirthDate() != null) {
-            if (request.getBirthDate().plusYears(minAge).isAfter(LocalDate.now())) {
-                throw new UserServiceException("To register you have to be 18 years old");
-            }
-            userEntity.setBirthDate(request.getBirthDate());
+
+        List<UserDto> users;
+        if (userShardedStore.isEnabled()) {
+            users = userShardedStore.findPageByBirthDate(cursor, to, limit + 1);
+        } else if (userBirthdayIndex.isReady()) {
+            users = userBirthdayIndex.findPageByBirthDate(cursor, to, limit + 1);
+        } else {
+            users = userRepository.findPageByBirthDate(cursor.getBirthDate(), cursor.getId(), to, Limit.of(limit + 1));
+        }
+        if (users.size() <= limit) {
+            return new UserPage(users, null);
         }
-        request.getAddress().ifPresent((address) -> userEntity.setAddress(address));
-        request.getPhoneNumber().ifPresent((phone) -> userEntity.setPhoneNumber(phone));
 
-        userRepository.save(userEntity);
+        List<UserDto> page = users.subList(0, limit);
+        UserDto last = page.get(limit - 1);
+        return new UserPage(List.copyOf(page), new BirthdayCursor(last.getBirthDate(), last.getId()).encode());
+    }
+
+    /**
+     * Returns a page of the users whose birthday comes up in the {@code days} days from {@code from}, in the order
+     * of their birthdays and ids. Birthdays on February 29 come up on February 28 in other years.
+     */
+    @Transactional(readOnly = true)
+    public UserPage searchUpcomingBirthdays(LocalDate from, int days, int limit, String next) throws UserServiceException {
+        if (days < 1 || days > MAX_UPCOMING_DAYS) {
+            throw new UserServiceException("Days should be between 1 and " + MAX_UPCOMING_DAYS);
+        }
+        if (limit < 1 || limit > maxPageSize) {
+            throw new UserServiceException("Limit should be between 1 and " + maxPageSize);
+        }
+        List<int[]> ranges = upcomingMonthDays(from, days);
+        BirthMonthDayCursor cursor = next == null ? BirthMonthDayCursor.start(ranges.get(0)[0]) : BirthMonthDayCursor.decode(next);
 
-        return new UserDto(userEntity.getId(),
-                userEntity.getEmail(),
-                userEntity.getFirstName(),
-                userEntity.getLastName(),
-                userEntity.getBirthDate(),
-                userEntity.getAddress(),
-                userEntity.getPhoneNumber());
+        // the second range is the one after December 31, below the start of the first
+        int first = ranges.size() > 1 && cursor.getMonthDay() < ranges.get(0)[0] ? 1 : 0;
+        List<UserDto> users = new ArrayList<>(limit + 1);
+        for (int i = first; i < ranges.size() && users.size() <= limit; i++) {
+            int[] range = ranges.get(i);
+            BirthMonthDayCursor after = i == first && cursor.getMonthDay() >= range[0] ? cursor : BirthMonthDayCursor.start(range[0]);
+            users.addAll(findPageByBirthMonthDay(after, range[1], limit + 1 - users.size()));
+        }
+        if (users.size() <= limit) {
+            return new UserPage(users, null);
+        }
 
+        List<UserDto> page = users.subList(0, limit);
+        UserDto last = page.get(limit - 1);
+        return new UserPage(List.copyOf(page),
+                new BirthMonthDayCursor(BirthMonthDayCursor.monthDay(last.getBirthDate()), last.getId()).encode());
     }
 
-    public List<UserDto> searchUsersByBirthday(LocalDate from, LocalDate to) throws UserServiceException {
+    private List<UserDto> findPageByBirthMonthDay(BirthMonthDayCursor cursor, int toMonthDay, int limit) throws UserServiceException {
+        if (userShardedStore.isEnabled()) {
+            return userShardedStore.findPageByBirthMonthDay(cursor, toMonthDay, limit);
+        }
+        return userRepository.findPageByBirthMonthDay(cursor.getMonthDay(), cursor.getId(), toMonthDay, Limit.of(limit));
+    }
+
+    /**
+     * Month-day ranges, from and to, of the {@code days} days from {@code from} in the order they come up: one range,
+     * or two when the days cross December 31. Each range is a range scan of {@code users_birth_month_day_id_idx}.
+     */
+    private static List<int[]> upcomingMonthDays(LocalDate from, int days) {
+        LocalDate to = from.plusDays(days - 1);
+        int fromMonthDay = BirthMonthDayCursor.monthDay(from);
+        if (to.getYear() == from.getYear()) {
+            return List.of(new int[]{fromMonthDay, toMonthDay(to)});
+        }
+        // up to a year ahead, so the days of the next year end before the month-day they started at
+        int nextYearToMonthDay = Math.min(toMonthDay(to), fromMonthDay - 1);
+        if (nextYearToMonthDay < FIRST_MONTH_DAY) {
+            return List.of(new int[]{fromMonthDay, LAST_MONTH_DAY});
+        }
+        return List.of(new int[]{fromMonthDay, LAST_MONTH_DAY}, new int[]{FIRST_MONTH_DAY, nextYearToMonthDay});
+    }
+
+    private static int toMonthDay(LocalDate to) {
+        if (to.getMonth() == Month.FEBRUARY && to.getDayOfMonth() == 28 && !to.isLeapYear()) {
+            return FEBRUARY_29;
+        }
+        return BirthMonthDayCursor.monthDay(to);
+    }
+
+    /**
+     * Returns a page of the users whose email, last name or first name starts with the query, ignoring case. Users
+     * matching by email come first, then by last name, then by first name, each in the order of the matched field.
+     */
+    @Transactional(readOnly = true)
+    public UserPage searchUsers(String query, int limit, String next) throws UserServiceException {
+        if (query == null || query.isBlank()) {
+            throw new UserServiceException("Query should not be blank");
+        }
+        if (limit < 1 || limit > maxPageSize) {
+            throw new UserServiceException("Limit should be between 1 and " + maxPageSize);
+        }
+        String prefix = UserSearchField.normalize(query);
+        UserSearchField[] fields = UserSearchField.values();
+        UserSearchCursor cursor = next == null ? UserSearchCursor.start(fields[0], prefix) : UserSearchCursor.decode(next);
+
+        List<UserDto> users = new ArrayList<>(limit + 1);
+        UserSearchField lastField = cursor.getField();
+        for (int i = cursor.getField().ordinal(); i < fields.length && users.size() <= limit; i++) {
+            UserSearchCursor after = fields[i] == cursor.getField() ? cursor : UserSearchCursor.start(fields[i], prefix);
+            List<UserDto> found = findPageByPrefix(after, prefix, limit + 1 - users.size());
+            // the field the last user of the page matched by
+            if (!found.isEmpty() && users.size() < limit) {
+                lastField = fields[i];
+            }
+            users.addAll(found);
+        }
+        if (users.size() <= limit) {
+            return new UserPage(users, null);
+        }
+
+        List<UserDto> page = users.subList(0, limit);
+        UserDto last = page.get(limit - 1);
+        return new UserPage(List.copyOf(page), new UserSearchCursor(lastField, lastField.lowercaseValue(last), last.getId()).encode());
+    }
+
+    private List<UserDto> findPageByPrefix(UserSearchCursor cursor, String prefix, int limit) throws UserServiceException {
+        if (userShardedStore.isEnabled()) {
+            return userShardedStore.findPageByPrefix(cursor, prefix, limit);
+        }
+        return userRepository.findPageByPrefix(cursor, prefix, limit);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamUsersByBirthday(LocalDate from, LocalDate to, Consumer<UserDto> consumer) throws UserServiceException {
         if (from.isAfter(to)) {
             throw new UserServiceException("From should not exceed to ");
         }
+        if (userShardedStore.isEnabled()) {
+            userShardedStore.streamUsersByBirthday(from, to, consumer);
+            return;
+        }
+        if (userBirthdayIndex.isReady()) {
+            userBirthdayIndex.streamUsersByBirthday(from, to, consumer);
+            return;
+        }
 
-        List<UserEntity> entitiesList = userRepository.findAllByBirthDateIsBetween(from, to);
-
-        return entitiesList.stream()
-                .map(entity -> new UserDto(entity.getId(),
-                        entity.getEmail(),
-                        entity.getFirstName(),
-                        entity.getLastName(),
-                        entity.getBirthDate(),
-                        entity.getAddress(),
-                        entity.getPhoneNumber()))
-                .toList();
+        try (Stream<UserDto> users = userRepository.streamAllByBirthDateIsBetween(from, to)) {
+            users.forEach(consumer);
+        }
     }
 
 }
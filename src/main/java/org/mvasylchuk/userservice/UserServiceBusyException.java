@@ -0,0 +1,7 @@
+package org.mvasylchuk.userservice;
+
+public class UserServiceBusyException extends UserServiceException {
+    public UserServiceBusyException(String message) {
+        super(UserRejectionReason.BUSY, message);
+    }
+}
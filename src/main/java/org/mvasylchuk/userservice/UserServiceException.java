@@ -1,7 +1,17 @@
 package org.mvasylchuk.userservice;
 
+import lombok.Getter;
+
+@Getter
 public class UserServiceException extends Exception {
+    private final UserRejectionReason reason;
+
     public UserServiceException(String message) {
+        this(UserRejectionReason.VALIDATION, message);
+    }
+
+    public UserServiceException(UserRejectionReason reason, String message) {
         super(message);
+        this.reason = reason;
     }
 }
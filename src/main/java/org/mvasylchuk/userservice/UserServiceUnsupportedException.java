@@ -0,0 +1,7 @@
+package org.mvasylchuk.userservice;
+
+public class UserServiceUnsupportedException extends UserServiceException {
+    public UserServiceUnsupportedException(String message) {
+        super(UserRejectionReason.UNSUPPORTED, message);
+    }
+}
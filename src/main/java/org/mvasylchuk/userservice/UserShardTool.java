@@ -0,0 +1,156 @@
+package org.mvasylchuk.userservice;
+
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Data moves of the sharded mode, run at startup when {@code userService.shards.tool} names one, e.g.
+ * {@code java -jar user-service.jar --spring.main.web-application-type=none --userService.shards.enabled=true
+ * --userService.shards.tool=reshard}. Rows are upserted in batches of {@code userService.shards.toolBatchSize}, so a
+ * run that failed can be started again. Writes to users should be stopped while it runs.
+ * <ul>
+ *     <li>{@code backfill} copies the users of {@code spring.datasource} to the shards and claims their emails. The
+ *     shard sequences are moved past the copied ids first, so that generated ids do not collide with them.</li>
+ *     <li>{@code reshard} moves the users and email claims that are not on the shard that owns them under the current
+ *     {@code userService.shards.urls}, e.g. after shards were added. Their change history stays where it was. The
+ *     shard sequences are aligned first, as shards that took over buckets could issue ids that are taken there.</li>
+ * </ul>
+ */
+@Component
+public class UserShardTool implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(UserShardTool.class);
+
+    private final String tool;
+    private final int batchSize;
+    private final UserShards shards;
+    private final UserShardedStore userShardedStore;
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserShardTool(@Value("${userService.shards.tool}") String tool,
+                         @Value("${userService.shards.toolBatchSize}") int batchSize,
+                         UserShards shards,
+                         UserShardedStore userShardedStore,
+                         JdbcTemplate jdbcTemplate) {
+        this.tool = tool;
+        this.batchSize = batchSize;
+        this.shards = shards;
+        this.userShardedStore = userShardedStore;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (tool.isEmpty()) {
+            return;
+        }
+        if (!shards.isEnabled()) {
+            throw new IllegalStateException("userService.shards.tool needs userService.shards.enabled");
+        }
+        switch (tool) {
+            case "backfill" -> log.info("Backfilled {} users", backfill());
+            case "reshard" -> log.info("Moved {} users", reshard());
+            default -> throw new IllegalStateException("Unknown userService.shards.tool " + tool);
+        }
+    }
+
+    long backfill() {
+        alignSequences(jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM users", Long.class));
+
+        long copied = 0;
+        long after = Long.MIN_VALUE;
+        while (true) {
+            List<UserDto> users = jdbcTemplate.query(UserShardedStore.SELECT_USER + "WHERE id > ? ORDER BY id LIMIT ?",
+                    UserShardedStore.USER, after, batchSize);
+            if (users.isEmpty()) {
+                return copied;
+            }
+            userShardedStore.copyUsers(users);
+            copied += users.size();
+            after = users.get(users.size() - 1).getId();
+        }
+    }
+
+    long reshard() {
+        // a shard that took over buckets must not issue the ids that their previous owner already issued
+        long maxId = 0;
+        for (UserShards.Shard shard : shards.getShards()) {
+            maxId = Math.max(maxId, shard.getJdbc().getJdbcTemplate().queryForObject("SELECT COALESCE(MAX(id), 0) FROM users", Long.class));
+        }
+        alignSequences(maxId);
+
+        long moved = 0;
+        for (UserShards.Shard shard : shards.getShards()) {
+            long after = Long.MIN_VALUE;
+            while (true) {
+                List<UserDto> users = shard.getJdbc().query(UserShardedStore.SELECT_USER + "WHERE id > :after ORDER BY id LIMIT :limit",
+                        Map.of("after", after, "limit", batchSize), UserShardedStore.USER);
+                if (users.isEmpty()) {
+                    break;
+                }
+                List<UserDto> misplaced = users.stream().filter(user -> shards.ofId(user.getId()) != shard).toList();
+                if (!misplaced.isEmpty()) {
+                    // their emails are claimed again on the shards that own them
+                    userShardedStore.copyUsers(misplaced);
+                    shard.getJdbc().update("DELETE FROM users WHERE id IN (:ids)",
+                            Map.of("ids", misplaced.stream().map(UserDto::getId).toList()));
+                    moved += misplaced.size();
+                }
+                after = users.get(users.size() - 1).getId();
+            }
+        }
+        // claims of users that did not move may still be on a shard that does not own them
+        for (UserShards.Shard shard : shards.getShards()) {
+            String after = "";
+            while (true) {
+                List<UserShardedStore.Claim> claims = shard.getJdbc().query("SELECT email, user_id, claimed_at FROM user_emails " +
+                        "WHERE email > :after ORDER BY email LIMIT :limit", Map.of("after", after, "limit", batchSize), UserShardedStore.CLAIM);
+                if (claims.isEmpty()) {
+                    break;
+                }
+                claims.stream()
+                        .filter(claim -> shards.ofEmail(claim.getEmail()) != shard)
+                        .collect(Collectors.groupingBy(claim -> shards.ofEmail(claim.getEmail())))
+                        .forEach((owner, ownerClaims) -> {
+                            owner.getJdbc().batchUpdate(UserShardedStore.UPSERT_EMAIL, ownerClaims.stream()
+                                    .map(claim -> new MapSqlParameterSource()
+                                            .addValue("email", claim.getEmail())
+                                            .addValue("userId", claim.getUserId())
+                                            .addValue("claimedAt", claim.getClaimedAt()))
+                                    .toArray(MapSqlParameterSource[]::new));
+                            shard.getJdbc().update("DELETE FROM user_emails WHERE email IN (:emails)",
+                                    Map.of("emails", ownerClaims.stream().map(UserShardedStore.Claim::getEmail).toList()));
+                        });
+                after = claims.get(claims.size() - 1).getEmail();
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Moves the sequences of all shards past {@code maxId} and past each other, so that any shard can issue ids in
+     * any bucket.
+     */
+    private void alignSequences(long maxId) {
+        long value = (maxId >> UserShards.BUCKET_BITS) + 1;
+        for (UserShards.Shard shard : shards.getShards()) {
+            value = Math.max(value, shard.getJdbc().getJdbcTemplate()
+                    .queryForObject("SELECT next_not_cached_value FROM user_id_seq", Long.class));
+        }
+        for (UserShards.Shard shard : shards.getShards()) {
+            // SETVAL never moves a sequence back
+            shard.getJdbc().getJdbcTemplate().queryForObject("SELECT SETVAL(user_id_seq, ?)", Long.class, value);
+        }
+    }
+}
@@ -0,0 +1,518 @@
+package org.mvasylchuk.userservice;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Users of the sharded mode, see {@link UserShards}. A user and its changes are written in one transaction on the
+ * shard of its id, and its email is claimed on the shard of the email before that and released after a failed write,
+ * an email change or a delete. Claims that a failure between the two writes leaves behind are taken over by the next
+ * user with the email once they are older than {@code userService.shards.claimTimeout}.
+ * <p>
+ * Birthday searches query all shards in parallel, each in {@code (birth_date, id)} order, and merge the rows as they
+ * arrive. Each shard streams into a queue of {@value #QUEUE_CAPACITY} rows, so a slow reader holds the shard queries
+ * back rather than buffering their results.
+ */
+@Component
+public class UserShardedStore {
+    static final String SELECT_USER = "SELECT id, email, first_name, last_name, birth_date, address, phone_number, version FROM users ";
+    static final RowMapper<UserDto> USER = (row, rowNumber) -> new UserDto(row.getLong("id"),
+            row.getString("email"),
+            row.getString("first_name"),
+            row.getString("last_name"),
+            row.getObject("birth_date", LocalDate.class),
+            row.getString("address"),
+            row.getString("phone_number"),
+            row.getLong("version"));
+    private static final String INSERT_USER = "INSERT INTO users (id, email, first_name, last_name, birth_date, address, phone_number, version) " +
+            "VALUES (:id, :email, :firstName, :lastName, :birthDate, :address, :phoneNumber, :version)";
+    private static final String UPSERT_USER = INSERT_USER + " ON DUPLICATE KEY UPDATE " +
+            "email = VALUES(email), first_name = VALUES(first_name), last_name = VALUES(last_name), " +
+            "birth_date = VALUES(birth_date), address = VALUES(address), phone_number = VALUES(phone_number), version = VALUES(version)";
+    private static final String INSERT_EMAIL = "INSERT INTO user_emails (email, user_id, claimed_at) VALUES (:email, :userId, :claimedAt)";
+    static final RowMapper<Claim> CLAIM = (row, rowNumber) -> new Claim(row.getString("email"),
+            row.getLong("user_id"),
+            row.getObject("claimed_at", LocalDateTime.class));
+    static final String UPSERT_EMAIL = INSERT_EMAIL + " ON DUPLICATE KEY UPDATE user_id = VALUES(user_id), claimed_at = VALUES(claimed_at)";
+    private static final String INSERT_CHANGE = "INSERT INTO user_changes " +
+            "(type, user_id, email, first_name, last_name, birth_date, address, phone_number, version, changed_at) " +
+            "VALUES (:type, :id, :email, :firstName, :lastName, :birthDate, :address, :phoneNumber, :version, CURRENT_TIMESTAMP(6))";
+    private static final Comparator<UserDto> BY_BIRTHDAY = Comparator.comparing(UserDto::getBirthDate).thenComparing(UserDto::getId);
+    private static final Comparator<UserDto> BY_BIRTH_MONTH_DAY = Comparator.<UserDto>comparingInt(user -> BirthMonthDayCursor.monthDay(user.getBirthDate()))
+            .thenComparing(UserDto::getId);
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final UserShards shards;
+    private final Duration claimTimeout;
+
+    public UserShardedStore(UserShards shards, @Value("${userService.shards.claimTimeout}") Duration claimTimeout) {
+        this.shards = shards;
+        this.claimTimeout = claimTimeout;
+    }
+
+    public boolean isEnabled() {
+        return shards.isEnabled();
+    }
+
+    public Optional<UserDto> findUser(Long id) {
+        return findUser(shards.ofId(id), id);
+    }
+
+    /**
+     * Rejects the operations that only know {@code spring.datasource}, so that they do not write users that sharded
+     * reads never see, or serve a feed that misses the changes on the shards.
+     */
+    public void checkSupported(String operation) throws UserServiceUnsupportedException {
+        if (isEnabled()) {
+            throw new UserServiceUnsupportedException(operation + " is not supported in sharded mode");
+        }
+    }
+
+    /**
+     * Finds the users with one {@code IN} query per shard of their ids. Absent users are left out.
+     */
+    public List<UserDto> findUsers(Collection<Long> ids) {
+        List<UserDto> users = new ArrayList<>(ids.size());
+        ids.stream()
+                .collect(Collectors.groupingBy(shards::ofId))
+                .forEach((shard, shardIds) -> users.addAll(shard.getJdbc()
+                        .query(SELECT_USER + "WHERE id IN (:ids)", Map.of("ids", shardIds), USER)));
+        return users;
+    }
+
+    /**
+     * Finds the user through the claim of its email. A claim that a failed write left behind has no user, or one with
+     * another email by now.
+     */
+    public Optional<UserDto> findUserByEmail(String email) {
+        return shards.ofEmail(email).getJdbc()
+                .queryForList("SELECT user_id FROM user_emails WHERE email = :email", Map.of("email", email), Long.class)
+                .stream()
+                .findFirst()
+                .flatMap(this::findUser)
+                .filter(user -> user.getEmail().equalsIgnoreCase(email));
+    }
+
+    public UserDto createUser(CreateUserRequest request) throws UserServiceException {
+        long id = shards.nextId();
+        if (!claimEmail(request.getEmail(), id)) {
+            throw new UserServiceException(UserRejectionReason.DUPLICATE_EMAIL, UserService.EMAIL_EXISTS_ERROR);
+        }
+        UserDto user = UserMapper.toDto(id, request, 0L);
+        UserShards.Shard shard = shards.ofId(id);
+        try {
+            shard.getTransactionTemplate().executeWithoutResult(status -> {
+                shard.getJdbc().update(INSERT_USER, userParameters(user));
+                recordChange(shard, UserChangeType.CREATED, id);
+            });
+        } catch (RuntimeException e) {
+            releaseEmail(request.getEmail(), id);
+            throw e;
+        }
+        return user;
+    }
+
+    public UserDto updateAllUserFields(Long id, CreateUserRequest request, Long expectedVersion) throws UserServiceException {
+        Map<String, Object> columns = new LinkedHashMap<>();
+        columns.put("email", request.getEmail());
+        columns.put("first_name", request.getFirstName());
+        columns.put("last_name", request.getLastName());
+        columns.put("birth_date", request.getBirthDate());
+        columns.put("address", request.getAddress());
+        columns.put("phone_number", request.getPhoneNumber());
+        return update(id, request.getEmail(), columns, expectedVersion);
+    }
+
+    public UserDto updateSomeUserFields(Long id, UpdateUserRequest request, Long expectedVersion) throws UserServiceException {
+        Map<String, Object> columns = new LinkedHashMap<>();
+        if (request.getEmail() != null) {
+            columns.put("email", request.getEmail());
+        }
+        if (request.getFirstName() != null) {
+            columns.put("first_name", request.getFirstName());
+        }
+        if (request.getLastName() != null) {
+            columns.put("last_name", request.getLastName());
+        }
+        if (request.getBirthDate() != null) {
+            columns.put("birth_date", request.getBirthDate());
+        }
+        if (UserRepositoryCustomImpl.isPresent(request.getAddress())) {
+            columns.put("address", request.getAddress().get());
+        }
+        if (UserRepositoryCustomImpl.isPresent(request.getPhoneNumber())) {
+            columns.put("phone_number", request.getPhoneNumber().get());
+        }
+        return update(id, request.getEmail(), columns, expectedVersion);
+    }
+
+    public int deleteUser(Long id) {
+        UserShards.Shard shard = shards.ofId(id);
+        Optional<UserDto> deleted = shard.getTransactionTemplate().execute(status -> {
+            Optional<UserDto> user = recordChange(shard, UserChangeType.DELETED, id);
+            shard.getJdbc().update("DELETE FROM users WHERE id = :id", Map.of("id", id));
+            return user;
+        });
+        deleted.ifPresent(user -> releaseEmail(user.getEmail(), id));
+        return deleted.isPresent() ? 1 : 0;
+    }
+
+    public List<UserDto> searchUsersByBirthday(LocalDate from, LocalDate to) throws UserServiceBusyException {
+        List<UserDto> users = new ArrayList<>();
+        mergeByBirthday(BirthdayCursor.start(from), to, 0, users::add);
+        return users;
+    }
+
+    /**
+     * Returns up to {@code limit} users after the cursor, like {@link UserRepository#findPageByBirthDate}.
+     */
+    List<UserDto> findPageByBirthDate(BirthdayCursor cursor, LocalDate to, int limit) throws UserServiceBusyException {
+        List<UserDto> users = new ArrayList<>(limit);
+        mergeByBirthday(cursor, to, limit, users::add);
+        return users;
+    }
+
+    public void streamUsersByBirthday(LocalDate from, LocalDate to, Consumer<UserDto> consumer) throws UserServiceBusyException {
+        mergeByBirthday(BirthdayCursor.start(from), to, 0, consumer);
+    }
+
+    /**
+     * Returns up to {@code limit} users after the cursor, like {@link UserRepository#findPageByBirthMonthDay}.
+     */
+    List<UserDto> findPageByBirthMonthDay(BirthMonthDayCursor cursor, int toMonthDay, int limit) throws UserServiceBusyException {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("afterMonthDay", cursor.getMonthDay())
+                .addValue("afterId", cursor.getId())
+                .addValue("toMonthDay", toMonthDay)
+                .addValue("limit", limit);
+        String sql = SELECT_USER +
+                "WHERE birth_month_day BETWEEN :afterMonthDay AND :toMonthDay " +
+                "AND (birth_month_day > :afterMonthDay OR id > :afterId) " +
+                "ORDER BY birth_month_day, id LIMIT :limit";
+        List<UserDto> users = new ArrayList<>(limit);
+        merge(sql, parameters, BY_BIRTH_MONTH_DAY, limit, users::add);
+        return users;
+    }
+
+    /**
+     * Returns up to {@code limit} users after the cursor, like {@link UserRepository#findPageByPrefix}.
+     */
+    List<UserDto> findPageByPrefix(UserSearchCursor cursor, String prefix, int limit) throws UserServiceBusyException {
+        UserSearchField field = cursor.getField();
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("afterValue", cursor.getValue())
+                .addValue("afterId", cursor.getId())
+                .addValue("pattern", UserSearchField.likePattern(prefix))
+                .addValue("limit", limit);
+        String escape = " ESCAPE '" + UserSearchField.LIKE_ESCAPE + "'";
+        StringBuilder sql = new StringBuilder(SELECT_USER)
+                .append("WHERE ").append(field.getColumn()).append(" >= :afterValue ")
+                .append("AND ").append(field.getColumn()).append(" LIKE :pattern").append(escape)
+                .append(" AND (").append(field.getColumn()).append(" > :afterValue OR id > :afterId)");
+        for (UserSearchField higher : UserSearchField.values()) {
+            if (higher == field) {
+                break;
+            }
+            sql.append(" AND ").append(higher.getColumn()).append(" NOT LIKE :pattern").append(escape);
+        }
+        sql.append(" ORDER BY ").append(field.getColumn()).append(", id LIMIT :limit");
+
+        List<UserDto> users = new ArrayList<>(limit);
+        merge(sql.toString(), parameters, Comparator.comparing(field::lowercaseValue).thenComparing(UserDto::getId), limit, users::add);
+        return users;
+    }
+
+    /**
+     * Writes the users to the shards of their ids and claims their emails, replacing the rows that are there.
+     */
+    void copyUsers(List<UserDto> users) {
+        LocalDateTime now = LocalDateTime.now();
+        users.stream()
+                .collect(Collectors.groupingBy(user -> shards.ofId(user.getId())))
+                .forEach((shard, shardUsers) -> shard.getJdbc().batchUpdate(UPSERT_USER,
+                        shardUsers.stream().map(UserShardedStore::userParameters).toArray(SqlParameterSource[]::new)));
+        users.stream()
+                .collect(Collectors.groupingBy(user -> shards.ofEmail(user.getEmail())))
+                .forEach((shard, shardUsers) -> shard.getJdbc().batchUpdate(UPSERT_EMAIL, shardUsers.stream()
+                        .map(user -> emailParameters(user.getEmail(), user.getId(), now))
+                        .toArray(SqlParameterSource[]::new)));
+    }
+
+    private UserDto update(Long id, String newEmail, Map<String, Object> columns, Long expectedVersion) throws UserServiceException {
+        UserShards.Shard shard = shards.ofId(id);
+        String email = findUser(shard, id)
+                .map(UserDto::getEmail)
+                .orElseThrow(() -> new UserServiceException(UserRejectionReason.NOT_FOUND, UserService.NOT_FOUND_ERROR));
+        boolean emailChanged = newEmail != null && !newEmail.equalsIgnoreCase(email);
+        if (emailChanged && !claimEmail(newEmail, id)) {
+            throw new UserServiceException(UserRejectionReason.DUPLICATE_EMAIL, UserService.EMAIL_EXISTS_ERROR);
+        }
+
+        Optional<UserDto> updated;
+        try {
+            updated = shard.getTransactionTemplate().execute(status -> {
+                if (updateColumns(shard, id, columns, expectedVersion) == 0) {
+                    return Optional.empty();
+                }
+                return recordChange(shard, UserChangeType.UPDATED, id);
+            });
+        } catch (RuntimeException e) {
+            if (emailChanged) {
+                releaseEmail(newEmail, id);
+            }
+            throw e;
+        }
+        if (updated.isEmpty()) {
+            if (emailChanged) {
+                releaseEmail(newEmail, id);
+            }
+            throw findUser(shard, id).isPresent()
+                    ? new UserVersionMismatchException("User was modified by another request")
+                    : new UserServiceException(UserRejectionReason.NOT_FOUND, UserService.NOT_FOUND_ERROR);
+        }
+        if (emailChanged) {
+            releaseEmail(email, id);
+        }
+        return updated.get();
+    }
+
+    private static int updateColumns(UserShards.Shard shard, Long id, Map<String, Object> columns, Long expectedVersion) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(columns)
+                .addValue("id", id)
+                .addValue("expectedVersion", expectedVersion);
+        String matches = "WHERE id = :id" + (expectedVersion != null ? " AND version = :expectedVersion" : "");
+        if (columns.isEmpty()) {
+            Integer count = shard.getJdbc().queryForObject("SELECT COUNT(*) FROM users " + matches, parameters, Integer.class);
+            return count == null ? 0 : count;
+        }
+        return shard.getJdbc().update("UPDATE users SET " +
+                columns.keySet().stream().map(column -> column + " = :" + column).collect(Collectors.joining(", ")) +
+                ", version = version + 1 " + matches, parameters);
+    }
+
+    /**
+     * Copies the current state of the user into {@code user_changes} of its shard, see {@link UserChangeService}.
+     * Must be called in the transaction of the change.
+     */
+    private static Optional<UserDto> recordChange(UserShards.Shard shard, UserChangeType type, Long id) {
+        Optional<UserDto> user = shard.getJdbc().query(SELECT_USER + "WHERE id = :id FOR UPDATE", Map.of("id", id), USER)
+                .stream()
+                .findFirst();
+        user.ifPresent(current -> shard.getJdbc().update(INSERT_CHANGE, userParameters(current).addValue("type", type.name())));
+        return user;
+    }
+
+    private boolean claimEmail(String email, long userId) {
+        UserShards.Shard shard = shards.ofEmail(email);
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            shard.getJdbc().update(INSERT_EMAIL, emailParameters(email, userId, now));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return takeOverStaleClaim(shard, email, userId, now);
+        }
+    }
+
+    /**
+     * A claim is stale when its user does not have the email. Younger claims are kept, the write that goes with them
+     * may still be running.
+     */
+    private boolean takeOverStaleClaim(UserShards.Shard shard, String email, long userId, LocalDateTime now) {
+        List<Claim> claims = shard.getJdbc()
+                .query("SELECT email, user_id, claimed_at FROM user_emails WHERE email = :email", Map.of("email", email), CLAIM);
+        if (claims.isEmpty()) {
+            return false;
+        }
+        long claimedBy = claims.get(0).getUserId();
+        if (claims.get(0).getClaimedAt().isAfter(now.minus(claimTimeout))
+                || findUser(claimedBy).filter(user -> user.getEmail().equalsIgnoreCase(email)).isPresent()) {
+            return false;
+        }
+        return shard.getJdbc().update("UPDATE user_emails SET user_id = :userId, claimed_at = :claimedAt " +
+                        "WHERE email = :email AND user_id = :claimedBy",
+                emailParameters(email, userId, now).addValue("claimedBy", claimedBy)) == 1;
+    }
+
+    private void releaseEmail(String email, long userId) {
+        shards.ofEmail(email).getJdbc()
+                .update("DELETE FROM user_emails WHERE email = :email AND user_id = :userId", Map.of("email", email, "userId", userId));
+    }
+
+    private static Optional<UserDto> findUser(UserShards.Shard shard, Long id) {
+        return shard.getJdbc().query(SELECT_USER + "WHERE id = :id", Map.of("id", id), USER).stream().findFirst();
+    }
+
+    /**
+     * Passes the users after the cursor to the consumer in {@code (birth_date, id)} order, up to {@code limit} of them
+     * or all of them for 0.
+     */
+    private void mergeByBirthday(BirthdayCursor cursor, LocalDate to, int limit, Consumer<UserDto> consumer) throws UserServiceBusyException {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("afterDate", cursor.getBirthDate())
+                .addValue("afterId", cursor.getId())
+                .addValue("to", to)
+                .addValue("limit", limit);
+        String sql = SELECT_USER +
+                "WHERE birth_date BETWEEN :afterDate AND :to AND (birth_date > :afterDate OR id > :afterId) " +
+                "ORDER BY birth_date, id" + (limit > 0 ? " LIMIT :limit" : "");
+        merge(sql, parameters, BY_BIRTHDAY, limit, consumer);
+    }
+
+    /**
+     * Passes the users that the query returns on all shards to the consumer, merged in the order of the comparator,
+     * which has to be the order of the query, up to {@code limit} of them or all of them for 0. Fails as busy when the
+     * shard executor has no thread left for one of the queries.
+     */
+    private void merge(String sql, SqlParameterSource parameters, Comparator<UserDto> order, int limit, Consumer<UserDto> consumer) throws UserServiceBusyException {
+        List<ShardStream> streams = new ArrayList<>();
+        try {
+            try {
+                for (UserShards.Shard shard : shards.getShards()) {
+                    streams.add(new ShardStream(shard, sql, parameters));
+                }
+            } catch (RejectedExecutionException e) {
+                throw new UserServiceBusyException("Too many searches are running, retry later");
+            }
+            PriorityQueue<ShardStream> heads = new PriorityQueue<>(Comparator.comparing(ShardStream::getHead, order));
+            for (ShardStream stream : streams) {
+                if (stream.advance()) {
+                    heads.add(stream);
+                }
+            }
+            int merged = 0;
+            while (!heads.isEmpty() && (limit == 0 || merged < limit)) {
+                ShardStream stream = heads.poll();
+                consumer.accept(stream.getHead());
+                merged++;
+                if (stream.advance()) {
+                    heads.add(stream);
+                }
+            }
+        } finally {
+            streams.forEach(ShardStream::cancel);
+        }
+    }
+
+    private static MapSqlParameterSource userParameters(UserDto user) {
+        return new MapSqlParameterSource()
+                .addValue("id", user.getId())
+                .addValue("email", user.getEmail())
+                .addValue("firstName", user.getFirstName())
+                .addValue("lastName", user.getLastName())
+                .addValue("birthDate", user.getBirthDate())
+                .addValue("address", user.getAddress())
+                .addValue("phoneNumber", user.getPhoneNumber())
+                .addValue("version", user.getVersion());
+    }
+
+    private static MapSqlParameterSource emailParameters(String email, long userId, LocalDateTime claimedAt) {
+        return new MapSqlParameterSource()
+                .addValue("email", email)
+                .addValue("userId", userId)
+                .addValue("claimedAt", claimedAt);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class Claim {
+        private final String email;
+        private final long userId;
+        private final LocalDateTime claimedAt;
+    }
+
+    /**
+     * Rows of one shard, read by a query running on the shard executor.
+     */
+    private class ShardStream {
+        private final BlockingQueue<Object> rows = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final Object end = new Object();
+        private volatile boolean cancelled;
+        private volatile RuntimeException error;
+        private UserDto head;
+
+        private ShardStream(UserShards.Shard shard, String sql, SqlParameterSource parameters) {
+            shards.getExecutor().execute(() -> {
+                try {
+                    try {
+                        shard.getJdbc().query(sql, parameters, (RowCallbackHandler) row -> put(USER.mapRow(row, 0)));
+                    } catch (CancellationException e) {
+                        throw e;
+                    } catch (RuntimeException e) {
+                        error = e;
+                    }
+                    put(end);
+                } catch (CancellationException e) {
+                    // the merge is over, nobody reads the rest
+                }
+            });
+        }
+
+        UserDto getHead() {
+            return head;
+        }
+
+        boolean advance() {
+            Object row;
+            try {
+                row = rows.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading a shard", e);
+            }
+            if (row == end) {
+                if (error != null) {
+                    throw error;
+                }
+                return false;
+            }
+            head = (UserDto) row;
+            return true;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        private void put(Object row) {
+            try {
+                while (!rows.offer(row, 100, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) {
+                        throw new CancellationException();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.mvasylchuk.userservice;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Getter;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Shard topology of the sharded mode, enabled with {@code userService.shards.enabled}: the databases of
+ * {@code userService.shards.urls} each hold a part of the users, in the same schema as {@code spring.datasource}.
+ * <p>
+ * Rows are placed by {@value #BUCKETS} buckets, and shard {@code i} of {@code n} owns a contiguous range of
+ * {@code BUCKETS / n} of them. The bucket of a user is the low {@value #BUCKET_BITS} bits of its id, so generated ids
+ * carry the bucket they were generated for, and ids given out before sharding fall into buckets by their remainder.
+ * Emails are claimed in {@code user_emails} on the shard of the CRC32 bucket of the lower-cased email, which keeps
+ * them unique across shards.
+ */
+@Component
+public class UserShards implements AutoCloseable {
+    static final int BUCKETS = 1024;
+    static final int BUCKET_BITS = 10;
+
+    private final boolean enabled;
+    private final List<Shard> shards = new ArrayList<>();
+    private final ExecutorService executor;
+
+    public UserShards(@Value("${userService.shards.enabled}") boolean enabled,
+                      @Value("${userService.shards.urls}") List<String> urls,
+                      @Value("${userService.shards.maximumPoolSize}") int maximumPoolSize,
+                      DataSourceProperties properties) {
+        this.enabled = enabled;
+        // a search holds a connection of every shard while it runs, so more threads than connections would only wait
+        this.executor = new ThreadPoolExecutor(0, Math.max(urls.size(), 1) * maximumPoolSize, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "user-shard-query");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        if (!enabled) {
+            return;
+        }
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("userService.shards.urls should list at least one shard");
+        }
+        for (String url : urls) {
+            HikariDataSource dataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(url)
+                    .username(properties.determineUsername())
+                    .password(properties.determinePassword())
+                    .build();
+            dataSource.setPoolName("user-shard-" + shards.size());
+            dataSource.setMaximumPoolSize(maximumPoolSize);
+            Flyway.configure().dataSource(dataSource).load().migrate();
+            shards.add(new Shard(shards.size(), dataSource));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    /**
+     * Runs the queries of scatter-gather searches, one thread per shard and search, up to
+     * {@code userService.shards.maximumPoolSize} threads per shard. Further queries are rejected with a
+     * {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    ExecutorService getExecutor() {
+        return executor;
+    }
+
+    Shard ofId(long id) {
+        return ofBucket(bucketOfId(id));
+    }
+
+    Shard ofEmail(String email) {
+        return ofBucket(bucketOfEmail(email));
+    }
+
+    Shard ofBucket(int bucket) {
+        return shards.get(bucket * shards.size() / BUCKETS);
+    }
+
+    /**
+     * Generates the id of a new user in a random bucket. The sequence of the shard that owns the bucket makes it
+     * unique.
+     */
+    long nextId() {
+        int bucket = ThreadLocalRandom.current().nextInt(BUCKETS);
+        Long sequence = ofBucket(bucket).getJdbc().getJdbcTemplate().queryForObject("SELECT NEXTVAL(user_id_seq)", Long.class);
+        return sequence << BUCKET_BITS | bucket;
+    }
+
+    static int bucketOfId(long id) {
+        return (int) (id & (BUCKETS - 1));
+    }
+
+    static int bucketOfEmail(String email) {
+        CRC32 crc = new CRC32();
+        // emails are unique regardless of case, as the unique index of users.email
+        crc.update(email.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % BUCKETS);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        shards.forEach(shard -> shard.dataSource.close());
+    }
+
+    @Getter
+    public static class Shard {
+        private final int index;
+        private final HikariDataSource dataSource;
+        private final NamedParameterJdbcTemplate jdbc;
+        private final TransactionTemplate transactionTemplate;
+
+        private Shard(int index, HikariDataSource dataSource) {
+            this.index = index;
+            this.dataSource = dataSource;
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            // streams result sets instead of reading them whole, searches read them as fast as they are merged
+            jdbcTemplate.setFetchSize(1000);
+            this.jdbc = new NamedParameterJdbcTemplate(jdbcTemplate);
+            this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package org.mvasylchuk.userservice;
+
+public class UserVersionMismatchException extends UserServiceException {
+    public UserVersionMismatchException(String message) {
+        super(UserRejectionReason.VERSION_MISMATCH, message);
+    }
+}
@@ -0,0 +1,50 @@
+package org.mvasylchuk.userservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Binary encodings of the user API for service-to-service calls, picked by the Accept and Content-Type headers:
+ * CBOR ({@code application/cbor}) and Smile ({@code application/x-jackson-smile}). They carry the same
+ * {@link BaseResponse} as JSON. Spring registers both after JSON once their Jackson modules are on the classpath, so
+ * clients sending {@code Accept: *}{@code /*} still get JSON, but with plain ObjectMapper defaults. They are replaced
+ * here by ones with the settings Spring Boot applies to JSON, e.g. ISO dates.
+ * <p>
+ * The reactive stack stays JSON only: its functional endpoints write with the first codec that can encode the body,
+ * without negotiating between codecs.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class UserWireFormatConfiguration {
+
+    @Bean
+    WebMvcConfigurer userWireFormatConverters(Jackson2ObjectMapperBuilder builder) {
+        ObjectMapper cborMapper = builder.factory(new CBORFactory()).build();
+        ObjectMapper smileMapper = builder.factory(new SmileFactory()).build();
+        return new WebMvcConfigurer() {
+            @Override
+            public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+                converters.replaceAll(converter -> {
+                    if (converter instanceof MappingJackson2CborHttpMessageConverter) {
+                        return new MappingJackson2CborHttpMessageConverter(cborMapper);
+                    }
+                    if (converter instanceof MappingJackson2SmileHttpMessageConverter) {
+                        return new MappingJackson2SmileHttpMessageConverter(smileMapper);
+                    }
+                    return converter;
+                });
+            }
+        };
+    }
+}
@@ -0,0 +1,25 @@
+package org.mvasylchuk.userservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.*;
+import org.mvasylchuk.userservice.UserRejectionReason;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@EqualsAndHashCode
+public class CreateUserResult {
+    private Long id;
+    private String errorMessage;
+    @JsonIgnore
+    private UserRejectionReason reason;
+
+    public static CreateUserResult created(Long id) {
+        return new CreateUserResult(id, null, null);
+    }
+
+    public static CreateUserResult failed(UserRejectionReason reason, String errorMessage) {
+        return new CreateUserResult(null, errorMessage, reason);
+    }
+}
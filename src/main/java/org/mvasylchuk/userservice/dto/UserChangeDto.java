@@ -0,0 +1,17 @@
+package org.mvasylchuk.userservice.dto;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@EqualsAndHashCode
+public class UserChangeDto {
+    private long sequence;
+    private String type;
+    private LocalDateTime changedAt;
+    private UserDto user;
+}
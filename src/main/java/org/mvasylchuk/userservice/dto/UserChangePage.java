@@ -0,0 +1,15 @@
+package org.mvasylchuk.userservice.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@EqualsAndHashCode
+public class UserChangePage {
+    private List<UserChangeDto> changes;
+    private long next;
+}
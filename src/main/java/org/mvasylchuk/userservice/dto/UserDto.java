@@ -1,5 +1,6 @@
 package org.mvasylchuk.userservice.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
 
 import java.time.LocalDate;
@@ -17,4 +18,12 @@ public class UserDto {
     private LocalDate birthDate;
     private String address;
     private String phoneNumber;
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private Long version;
+
+    public UserDto(Long id, String email, String firstName, String lastName, LocalDate birthDate, String address,
+                   String phoneNumber) {
+        this(id, email, firstName, lastName, birthDate, address, phoneNumber, null);
+    }
 }
@@ -0,0 +1,21 @@
+package org.mvasylchuk.userservice.dto;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@EqualsAndHashCode
+public class UserImportDto {
+    private Long id;
+    private String format;
+    private String status;
+    private long processedRecords;
+    private long createdRecords;
+    private long rejectedRecords;
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+}
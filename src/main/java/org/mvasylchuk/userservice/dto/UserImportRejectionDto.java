@@ -0,0 +1,13 @@
+package org.mvasylchuk.userservice.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@EqualsAndHashCode
+public class UserImportRejectionDto {
+    private long recordNumber;
+    private String errorMessage;
+}
@@ -0,0 +1,15 @@
+package org.mvasylchuk.userservice.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@EqualsAndHashCode
+public class UserPage {
+    private List<UserDto> users;
+    private String next;
+}
@@ -0,0 +1 @@
+CREATE INDEX users_birth_date_id_idx ON users (birth_date, id);
@@ -0,0 +1,7 @@
+-- Hibernate's pooled optimizer treats every sequence value as the upper bound of a block of 50 ids,
+-- so the sequence has to restart at least one block above the ids handed out so far.
+SET @restart_with = (SELECT COALESCE(MAX(id), 0) + 50 FROM users);
+SET @alter_sequence = CONCAT('ALTER SEQUENCE user_id_seq INCREMENT BY 50 RESTART WITH ', @restart_with);
+PREPARE alter_sequence FROM @alter_sequence;
+EXECUTE alter_sequence;
+DEALLOCATE PREPARE alter_sequence;
@@ -0,0 +1,19 @@
+CREATE TABLE user_imports
+(
+    id                BIGINT      NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    format            VARCHAR(16) NOT NULL,
+    status            VARCHAR(16) NOT NULL,
+    processed_records BIGINT      NOT NULL DEFAULT 0, -- records of the file covered by committed chunks
+    created_records   BIGINT      NOT NULL DEFAULT 0,
+    rejected_records  BIGINT      NOT NULL DEFAULT 0,
+    started_at        DATETIME    NOT NULL,
+    updated_at        DATETIME    NOT NULL
+);
+CREATE TABLE user_import_rejections
+(
+    import_id     BIGINT       NOT NULL,
+    record_number BIGINT       NOT NULL,
+    error_message VARCHAR(255) NOT NULL,
+    PRIMARY KEY (import_id, record_number),
+    FOREIGN KEY (import_id) REFERENCES user_imports (id) ON DELETE CASCADE
+);
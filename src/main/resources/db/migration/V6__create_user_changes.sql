@@ -0,0 +1,14 @@
+CREATE TABLE user_changes
+(
+    id           BIGINT       NOT NULL AUTO_INCREMENT PRIMARY KEY, -- feed sequence number
+    type         VARCHAR(16)  NOT NULL,
+    user_id      BIGINT       NOT NULL,
+    email        VARCHAR(255) NOT NULL,                            -- user state after the change, before it for deletes
+    first_name   VARCHAR(255) NOT NULL,
+    last_name    VARCHAR(255) NOT NULL,
+    birth_date   DATE         NOT NULL,
+    address      VARCHAR(255),
+    phone_number VARCHAR(255),
+    version      BIGINT       NOT NULL,
+    changed_at   DATETIME(6)  NOT NULL
+);
@@ -0,0 +1,7 @@
+-- email claims of the sharded mode, each shard holds the emails of its buckets
+CREATE TABLE user_emails
+(
+    email      VARCHAR(255) NOT NULL PRIMARY KEY,
+    user_id    BIGINT       NOT NULL,
+    claimed_at DATETIME(6)  NOT NULL
+);
@@ -0,0 +1,3 @@
+-- Birthday in the year as MMDD, e.g. 229 for February 29, so that birthdays of any year can be searched by an index range.
+ALTER TABLE users ADD COLUMN birth_month_day SMALLINT AS (MONTH(birth_date) * 100 + DAYOFMONTH(birth_date)) STORED;
+CREATE INDEX users_birth_month_day_id_idx ON users (birth_month_day, id);
@@ -0,0 +1,9 @@
+-- Lowercase copies of the fields of the prefix search. They compare in code point order so that a prefix is one
+-- range of their indexes, in the order the sharded mode merges them in.
+ALTER TABLE users
+    ADD COLUMN email_lower      VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin AS (LOWER(email)) STORED,
+    ADD COLUMN last_name_lower  VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin AS (LOWER(last_name)) STORED,
+    ADD COLUMN first_name_lower VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin AS (LOWER(first_name)) STORED;
+CREATE INDEX users_email_lower_id_idx ON users (email_lower, id);
+CREATE INDEX users_last_name_lower_id_idx ON users (last_name_lower, id);
+CREATE INDEX users_first_name_lower_id_idx ON users (first_name_lower, id);
@@ -0,0 +1,110 @@
+package org.mvasylchuk.userservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mvasylchuk.userservice.dto.CreateUserResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mvasylchuk.userservice.UserRequests.request;
+
+@SpringBootTest(properties = "userService.batch.chunkSize=2")
+class UserBatchServiceTest {
+    @Autowired
+    private UserBatchService underTest;
+    @Autowired
+    private UserRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void createUsers() {
+        List<CreateUserResult> actual = underTest.createUsers(List.of(
+                request("email1@test.com", LocalDate.now().minusYears(20)),
+                request("email2@test.com", LocalDate.now().minusYears(30)),
+                request("email3@test.com", LocalDate.now().minusYears(40))));
+
+        assertThat(actual).allSatisfy(result -> {
+            assertNotNull(result.getId());
+            assertNull(result.getErrorMessage());
+        });
+        assertEquals("email2@test.com", repository.findById(actual.get(1).getId()).orElseThrow().getEmail());
+        assertEquals(3, repository.count());
+    }
+
+    @Test
+    void createUsers_whenSomeItemsAreInvalid_thenOnlyThoseItemsFail() {
+        repository.save(new UserEntity(null, "existing@test.com",
+                "firstName",
+                "lastName",
+                LocalDate.now().minusYears(21),
+                "address",
+                "+123456789098"));
+
+        List<CreateUserResult> actual = underTest.createUsers(List.of(
+                request("email1@test.com", LocalDate.now().minusYears(20)),
+                request("email1@test.com", LocalDate.now().minusYears(20)),
+                request("not an email", LocalDate.now().minusYears(20)),
+                request("email2@test.com", LocalDate.now().minusYears(2)),
+                request("Existing@test.com", LocalDate.now().minusYears(20)),
+                request("email3@test.com", LocalDate.now().minusYears(20))));
+
+        assertNotNull(actual.get(0).getId());
+        assertEquals(UserBatchService.DUPLICATE_IN_BATCH_ERROR, actual.get(1).getErrorMessage());
+        assertEquals("email: must be a well-formed email address", actual.get(2).getErrorMessage());
+        assertEquals(UserService.MIN_AGE_ERROR, actual.get(3).getErrorMessage());
+        assertEquals(UserService.EMAIL_EXISTS_ERROR, actual.get(4).getErrorMessage());
+        assertNotNull(actual.get(5).getId());
+        assertEquals(3, repository.count());
+    }
+
+    @Test
+    void deleteUsers() {
+        UserEntity first = repository.save(user("email1@test.com", LocalDate.of(2000, 1, 1)));
+        UserEntity second = repository.save(user("email2@test.com", LocalDate.of(2000, 1, 2)));
+        UserEntity third = repository.save(user("email3@test.com", LocalDate.of(2000, 1, 3)));
+        UserEntity kept = repository.save(user("email4@test.com", LocalDate.of(2000, 1, 4)));
+
+        long actual = underTest.deleteUsers(List.of(first.getId(), second.getId(), third.getId(), 2024L));
+
+        assertEquals(3, actual);
+        assertThat(repository.findAll()).extracting(UserEntity::getId).containsExactly(kept.getId());
+    }
+
+    @Test
+    void deleteUsersByBirthday() throws UserServiceException {
+        repository.save(user("email1@test.com", LocalDate.of(2000, 1, 1)));
+        repository.save(user("email2@test.com", LocalDate.of(2000, 1, 2)));
+        repository.save(user("email3@test.com", LocalDate.of(2000, 1, 3)));
+        UserEntity kept = repository.save(user("email4@test.com", LocalDate.of(2001, 1, 1)));
+
+        long actual = underTest.deleteUsersByBirthday(LocalDate.of(2000, 1, 1), LocalDate.of(2000, 12, 31));
+
+        assertEquals(3, actual);
+        assertThat(repository.findAll()).extracting(UserEntity::getId).containsExactly(kept.getId());
+    }
+
+    @Test
+    void deleteUsersByBirthday_whenFromExceedsTo_thenError() {
+        UserServiceException actual = assertThrows(UserServiceException.class,
+                () -> underTest.deleteUsersByBirthday(LocalDate.of(2023, 1, 2), LocalDate.of(2020, 1, 1)));
+        assertEquals("From should not exceed to ", actual.getMessage());
+    }
+
+    private static UserEntity user(String email, LocalDate birthDate) {
+        return new UserEntity(null, email,
+                "firstName",
+                "lastName",
+                birthDate,
+                "address",
+                "+123456789098");
+    }
+}
@@ -0,0 +1,162 @@
+package org.mvasylchuk.userservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.mvasylchuk.userservice.dto.UserPage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mvasylchuk.userservice.UserRequests.request;
+
+@SpringBootTest(properties = {
+        "userService.birthdayIndex.enabled=true",
+        "userService.birthdayIndex.refreshInterval=100ms"
+})
+class UserBirthdayIndexTest {
+    private static final LocalDate BIRTH_DATE = LocalDate.now().minusYears(20);
+
+    @Autowired
+    UserService userService;
+    @Autowired
+    UserBatchService userBatchService;
+    @Autowired
+    UserBirthdayIndex userBirthdayIndex;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    UserChangeService userChangeService;
+    @Autowired
+    DataSource dataSource;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        await(userBirthdayIndex::isReady);
+    }
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+        jdbcTemplate.update("DELETE FROM user_changes");
+    }
+
+    @Test
+    void searchUsersByBirthday_readsIdsFromIndex() throws UserServiceException {
+        UserDto indexed = userService.createUser(request("indexed@test.com", BIRTH_DATE));
+        // not written through the service nor recorded in the change feed, so the index does not know it
+        jdbcTemplate.update("INSERT INTO users (email, first_name, last_name, birth_date, version) " +
+                "VALUES ('unknown@test.com', 'firstName', 'lastName', ?, 0)", BIRTH_DATE);
+
+        assertEquals(List.of(indexed), userService.searchUsersByBirthday(BIRTH_DATE, BIRTH_DATE));
+        assertEquals(List.of(indexed), userService.searchUsersByBirthday(BIRTH_DATE, BIRTH_DATE, 10, null).getUsers());
+        List<UserDto> streamed = new ArrayList<>();
+        userService.streamUsersByBirthday(BIRTH_DATE, BIRTH_DATE, streamed::add);
+        assertEquals(List.of(indexed), streamed);
+    }
+
+    @Test
+    void searchUsersByBirthday_pagesInBirthdayOrder() throws UserServiceException {
+        List<UserDto> users = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            users.add(userService.createUser(request("user" + i + "@test.com", BIRTH_DATE.minusDays(i % 3))));
+        }
+        userBirthdayIndex.compact();
+        users.add(userService.createUser(request("pending@test.com", BIRTH_DATE.minusDays(1))));
+        users.sort((left, right) -> left.getBirthDate().equals(right.getBirthDate())
+                ? left.getId().compareTo(right.getId())
+                : left.getBirthDate().compareTo(right.getBirthDate()));
+
+        List<UserDto> paged = new ArrayList<>();
+        String next = null;
+        do {
+            UserPage page = userService.searchUsersByBirthday(BIRTH_DATE.minusDays(2), BIRTH_DATE, 4, next);
+            paged.addAll(page.getUsers());
+            next = page.getNext();
+        } while (next != null);
+        assertEquals(users, paged);
+        assertEquals(users.subList(1, 4), userService.searchUsersByBirthday(BIRTH_DATE.minusDays(1), BIRTH_DATE.minusDays(1)));
+    }
+
+    @Test
+    void searchUsersByBirthday_whenBirthDateChangedUnseen_thenSkipsUser() throws UserServiceException {
+        UserDto user = userService.createUser(request("moved@test.com", BIRTH_DATE));
+        userBirthdayIndex.compact();
+        // moved within the range by another writer whose change the index has not read yet
+        jdbcTemplate.update("UPDATE users SET birth_date = ? WHERE id = ?", BIRTH_DATE.minusDays(1), user.getId());
+
+        assertThat(userService.searchUsersByBirthday(BIRTH_DATE.minusDays(1), BIRTH_DATE)).isEmpty();
+        assertThat(userService.searchUsersByBirthday(BIRTH_DATE.minusDays(1), BIRTH_DATE, 10, null).getUsers()).isEmpty();
+    }
+
+    @Test
+    void updateAndDelete_areAppliedAtOnce() throws UserServiceException {
+        UserDto moved = userService.createUser(request("moved@test.com", BIRTH_DATE));
+        UserDto deleted = userService.createUser(request("deleted@test.com", BIRTH_DATE));
+        userBirthdayIndex.compact();
+
+        userService.updateSomeUserFields(moved.getId(), new UpdateUserRequest(null, null, null, BIRTH_DATE.minusDays(10), null, null));
+        userService.deleteUser(deleted.getId());
+
+        assertThat(userService.searchUsersByBirthday(BIRTH_DATE, BIRTH_DATE)).isEmpty();
+        assertThat(userService.searchUsersByBirthday(BIRTH_DATE.minusDays(10), BIRTH_DATE.minusDays(10)))
+                .extracting(UserDto::getEmail)
+                .containsExactly("moved@test.com");
+
+        userBirthdayIndex.compact();
+        assertEquals(0, userBirthdayIndex.getPendingChanges());
+        assertThat(userService.searchUsersByBirthday(BIRTH_DATE.minusDays(10), BIRTH_DATE))
+                .extracting(UserDto::getEmail)
+                .containsExactly("moved@test.com");
+    }
+
+    @Test
+    void changesOfOtherWriters_areReadFromChangeFeed() throws Exception {
+        userBatchService.createUsers(List.of(request("batch1@test.com", BIRTH_DATE), request("batch2@test.com", BIRTH_DATE)));
+
+        await(() -> search(BIRTH_DATE).size() == 2);
+    }
+
+    @Test
+    void fullMode_answersFromMemory() throws Exception {
+        UserDto user = userService.createUser(request("full@test.com", BIRTH_DATE));
+        try (UserBirthdayIndex full = new UserBirthdayIndex(true, "full", Duration.ofMillis(100), 100000, 1000,
+                Duration.ofSeconds(2), dataSource, userRepository, userChangeService)) {
+            full.start();
+            await(full::isReady);
+            jdbcTemplate.update("DELETE FROM users");
+
+            assertEquals(List.of(user), full.searchUsersByBirthday(BIRTH_DATE, BIRTH_DATE));
+            assertThat(full.getArrayBytes()).isPositive();
+        }
+    }
+
+    private List<UserDto> search(LocalDate birthDate) {
+        try {
+            return userService.searchUsersByBirthday(birthDate, birthDate);
+        } catch (UserServiceException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition was not met in time");
+            Thread.sleep(50);
+        }
+    }
+}
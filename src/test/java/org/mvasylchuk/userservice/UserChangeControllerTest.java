@@ -0,0 +1,32 @@
+package org.mvasylchuk.userservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.time.Duration;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+@SpringBootTest
+class UserChangeControllerTest {
+    @Autowired
+    UserChangeController underTest;
+    @MockBean
+    UserChangeService userChangeService;
+
+    @AfterEach
+    void tearDown() {
+        verifyNoMoreInteractions(userChangeService);
+    }
+
+    @Test
+    void poll() throws UserServiceException {
+        underTest.poll(10L, 20, 5);
+
+        verify(userChangeService).getChanges(10L, 20, Duration.ofSeconds(5));
+    }
+}
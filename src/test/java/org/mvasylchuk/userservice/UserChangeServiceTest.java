@@ -0,0 +1,159 @@
+package org.mvasylchuk.userservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.CreateUserResult;
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.mvasylchuk.userservice.dto.UserChangeDto;
+import org.mvasylchuk.userservice.dto.UserChangePage;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mvasylchuk.userservice.UserRequests.request;
+
+@SpringBootTest(properties = "userService.changes.settleTime=10s")
+class UserChangeServiceTest {
+    @Autowired
+    private UserChangeService underTest;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private UserBatchService userBatchService;
+    @Autowired
+    private UserRepository repository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // restarts the sequence numbers
+        jdbcTemplate.execute("TRUNCATE TABLE user_changes");
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void getChanges_whenUserIsCreatedUpdatedAndDeleted() throws UserServiceException {
+        UserDto created = userService.createUser(request("email@test.com"));
+        userService.updateSomeUserFields(created.getId(), new UpdateUserRequest(null,
+                "firstName1",
+                null,
+                null,
+                Optional.empty(),
+                Optional.empty()));
+        userService.deleteUser(created.getId());
+
+        UserChangePage actual = underTest.getChanges(0, 10, Duration.ZERO);
+
+        assertThat(actual.getChanges()).extracting(UserChangeDto::getSequence).containsExactly(1L, 2L, 3L);
+        assertThat(actual.getChanges()).extracting(UserChangeDto::getType).containsExactly("CREATED", "UPDATED", "DELETED");
+        assertThat(actual.getChanges()).extracting(change -> change.getUser().getId()).containsOnly(created.getId());
+        assertThat(actual.getChanges()).extracting(change -> change.getUser().getFirstName())
+                .containsExactly("firstName", "firstName1", "firstName1");
+        assertEquals(3, actual.getNext());
+        assertThat(underTest.getChanges(3, 10, Duration.ZERO).getChanges()).isEmpty();
+    }
+
+    @Test
+    void getChanges_whenChangeIsRolledBack_thenNotRecorded() throws UserServiceException {
+        UserDto created = userService.createUser(request("email@test.com"));
+
+        assertThrows(UserServiceException.class, () -> userService.updateAllUserFields(created.getId(),
+                new CreateUserRequest("email@test.com", "f", "l", LocalDate.now().minusYears(2), null, null)));
+        userService.deleteUser(created.getId() + 1000);
+
+        assertThat(underTest.getChanges(0, 10, Duration.ZERO).getChanges())
+                .extracting(UserChangeDto::getType)
+                .containsExactly("CREATED");
+    }
+
+    @Test
+    void getChanges_whenUsersAreCreatedAndDeletedInBulk() throws UserServiceException {
+        List<Long> ids = userBatchService.createUsers(List.of(request("email1@test.com"), request("email2@test.com")))
+                .stream()
+                .map(CreateUserResult::getId)
+                .toList();
+        userBatchService.deleteUsers(ids);
+
+        UserChangePage actual = underTest.getChanges(0, 10, Duration.ZERO);
+
+        assertThat(actual.getChanges()).extracting(UserChangeDto::getType)
+                .containsExactly("CREATED", "CREATED", "DELETED", "DELETED");
+        assertThat(actual.getChanges()).extracting(change -> change.getUser().getId())
+                .containsExactly(ids.get(0), ids.get(1), ids.get(0), ids.get(1));
+    }
+
+    @Test
+    void getChanges_whenNoChanges_thenWaitsForCommit() throws Exception {
+        CompletableFuture<UserDto> writer = CompletableFuture.supplyAsync(() -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(200);
+                return userService.createUser(request("email@test.com"));
+            } catch (InterruptedException | UserServiceException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        UserChangePage actual = underTest.getChanges(0, 10, Duration.ofSeconds(10));
+
+        assertThat(actual.getChanges()).extracting(change -> change.getUser().getId())
+                .containsExactly(writer.get().getId());
+    }
+
+    @Test
+    void getChanges_whenSequenceHasRecentGap_thenStopsBeforeIt() throws UserServiceException {
+        insertChange(1, Duration.ofMinutes(1));
+        insertChange(3, Duration.ofMinutes(1));
+        insertChange(5, Duration.ZERO);
+
+        UserChangePage actual = underTest.getChanges(0, 10, Duration.ZERO);
+
+        assertThat(actual.getChanges()).extracting(UserChangeDto::getSequence).containsExactly(1L, 3L);
+        assertEquals(3, actual.getNext());
+    }
+
+    @Test
+    void purge_deletesChangesOlderThanRetention() {
+        insertChange(1, Duration.ofDays(8));
+        insertChange(2, Duration.ofDays(6));
+
+        assertEquals(1, underTest.purge());
+
+        assertEquals(List.of(2L), jdbcTemplate.queryForList("SELECT id FROM user_changes", Long.class));
+    }
+
+    @Test
+    void getChanges_whenLimitIsTooBig_thenError() {
+        UserServiceException actual = assertThrows(UserServiceException.class,
+                () -> underTest.getChanges(0, 1001, Duration.ZERO));
+
+        assertEquals("Limit should be between 1 and 1000", actual.getMessage());
+    }
+
+    /**
+     * Inserts a change made {@code age} ago by the database clock.
+     */
+    private void insertChange(long sequence, Duration age) {
+        jdbcTemplate.update("INSERT INTO user_changes " +
+                        "(id, type, user_id, email, first_name, last_name, birth_date, version, changed_at) " +
+                        "VALUES (?, 'CREATED', ?, 'email@test.com', 'firstName', 'lastName', '2000-01-01', 0, " +
+                        "CURRENT_TIMESTAMP(6) - INTERVAL ? SECOND)",
+                sequence, sequence, age.toSeconds());
+    }
+}
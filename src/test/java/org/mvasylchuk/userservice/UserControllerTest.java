@@ -1,29 +1,60 @@
 package org.mvasylchuk.userservice;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.mvasylchuk.userservice.dto.CreateUserRequest;
 import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.mvasylchuk.userservice.dto.UserDto;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import java.io.IOException;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
+@AutoConfigureMockMvc
 class UserControllerTest {
+    private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
     @Autowired
     UserController underTest;
+    @Autowired
+    MockMvc mockMvc;
     @MockBean
     UserService userService;
+    @MockBean
+    UserBatchService userBatchService;
 
     @AfterEach
     void tearDown() {
-        verifyNoMoreInteractions(userService);
+        verifyNoMoreInteractions(userService, userBatchService);
     }
 
     @Test
@@ -41,6 +72,63 @@ class UserControllerTest {
         verify(userService).createUser(request);
     }
 
+    @Test
+    void createBatch() throws UserServiceException {
+        List<CreateUserRequest> requests = List.of(new CreateUserRequest(
+                "email@test.com",
+                "firstName",
+                "lastName",
+                LocalDate.now().minusYears(20),
+                "address",
+                "+123456789098"
+        ));
+        underTest.createBatch(requests);
+
+        verify(userBatchService).createUsers(requests);
+    }
+
+    @Test
+    void get() throws UserServiceException {
+        when(userService.getUser(1L)).thenReturn(user(3L));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        underTest.get(1L, new ServletWebRequest(new MockHttpServletRequest("GET", "/api/users/1"), response));
+
+        verify(userService).getUser(1L);
+        assertEquals("\"3\"", response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void get_whenETagMatches_thenNotModified() throws UserServiceException {
+        when(userService.getUser(1L)).thenReturn(user(3L));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users/1");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"3\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertNull(underTest.get(1L, new ServletWebRequest(request, response)));
+
+        verify(userService).getUser(1L);
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+    }
+
+    @Test
+    void getByEmail() throws UserServiceException {
+        underTest.getByEmail("email@test.com");
+
+        verify(userService).getUserByEmail("email@test.com");
+    }
+
+    @Test
+    void getByIds() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users")
+                        .param("ids", "2,1"))
+                .andExpect(status().isOk());
+        underTest.getByIdsInBody(List.of(3L));
+
+        verify(userService).getUsers(List.of(2L, 1L));
+        verify(userService).getUsers(List.of(3L));
+    }
+
     @Test
     void updateComplete() throws UserServiceException {
         CreateUserRequest request = new CreateUserRequest(
@@ -51,9 +139,27 @@ class UserControllerTest {
                 "address",
                 "+123456789098"
         );
-        underTest.updateComplete(1L, request);
+        when(userService.updateAllUserFields(1L, request, 3L)).thenReturn(user(4L));
+
+        ResponseEntity<?> actual = underTest.updateComplete(1L, "\"3\"", request);
 
-        verify(userService).updateAllUserFields(1L, request);
+        verify(userService).updateAllUserFields(1L, request, 3L);
+        assertEquals("\"4\"", actual.getHeaders().getETag());
+    }
+
+    @Test
+    void updateComplete_whenIfMatchIsNotAnETag_thenError() {
+        CreateUserRequest request = new CreateUserRequest(
+                "email@test.com",
+                "firstName",
+                "lastName",
+                LocalDate.now().minusYears(20),
+                "address",
+                "+123456789098"
+        );
+
+        UserServiceException actual = assertThrows(UserServiceException.class, () -> underTest.updateComplete(1L, "\"abc\"", request));
+        assertEquals("If-Match should contain an ETag returned for the user", actual.getMessage());
     }
 
     @Test
@@ -64,8 +170,12 @@ class UserControllerTest {
                 null,
                 Optional.empty(),
                 Optional.empty());
-        underTest.updatePartial(1L, request);
-        verify(userService).updateSomeUserFields(1L, request);
+        when(userService.updateSomeUserFields(1L, request, null)).thenReturn(user(4L));
+
+        ResponseEntity<?> actual = underTest.updatePartial(1L, null, request);
+
+        verify(userService).updateSomeUserFields(1L, request, null);
+        assertEquals("\"4\"", actual.getHeaders().getETag());
     }
 
     @Test
@@ -76,9 +186,119 @@ class UserControllerTest {
                 LocalDate.of(2024,1,1));
     }
 
+    @Test
+    void searchByBirthday_whenCborIsAccepted_thenCbor() throws Exception {
+        when(userService.searchUsersByBirthday(LocalDate.of(2000,1,1), LocalDate.of(2024,1,1)))
+                .thenReturn(List.of(user(3L)));
+
+        byte[] body = mockMvc.perform(MockMvcRequestBuilders.get("/api/users")
+                        .param("from", "2000-01-01")
+                        .param("to", "2024-01-01")
+                        .accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        verify(userService).searchUsersByBirthday(LocalDate.of(2000,1,1),
+                LocalDate.of(2024,1,1));
+        JsonNode user = new ObjectMapper(new CBORFactory()).readTree(body).get("data").get(0);
+        assertEquals("email@test.com", user.get("email").asText());
+        assertEquals(LocalDate.now().minusYears(20).toString(), user.get("birthDate").asText());
+    }
+
+    @Test
+    void searchByBirthday_whenAnyTypeIsAccepted_thenJson() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/users")
+                        .param("from", "2000-01-01")
+                        .param("to", "2024-01-01")
+                        .accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON));
+
+        verify(userService).searchUsersByBirthday(LocalDate.of(2000,1,1),
+                LocalDate.of(2024,1,1));
+    }
+
+    @Test
+    void create_whenRequestIsSmile_thenSmile() throws Exception {
+        CreateUserRequest request = new CreateUserRequest(
+                "email@test.com",
+                "firstName",
+                "lastName",
+                LocalDate.now().minusYears(20),
+                "address",
+                "+123456789098"
+        );
+        when(userService.createUser(any())).thenReturn(user(0L));
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory()).findAndRegisterModules();
+
+        byte[] body = mockMvc.perform(MockMvcRequestBuilders.post("/api/users")
+                        .contentType(SMILE)
+                        .accept(SMILE)
+                        .content(smileMapper.writeValueAsBytes(request)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        verify(userService).createUser(argThat(actual -> actual.getEmail().equals("email@test.com")
+                && actual.getBirthDate().equals(request.getBirthDate())));
+        assertEquals(1L, smileMapper.readTree(body).get("data").get("id").asLong());
+    }
+
+    @Test
+    void searchByBirthdayPage() throws UserServiceException {
+        underTest.searchByBirthdayPage(LocalDate.of(2000,1,1),
+                LocalDate.of(2024,1,1), 10, "token");
+        verify(userService).searchUsersByBirthday(LocalDate.of(2000,1,1),
+                LocalDate.of(2024,1,1), 10, "token");
+    }
+
+    @Test
+    void streamByBirthday() throws UserServiceException, IOException {
+        underTest.streamByBirthday(LocalDate.of(2000,1,1),
+                LocalDate.of(2024,1,1), new MockHttpServletResponse());
+        verify(userService).streamUsersByBirthday(eq(LocalDate.of(2000,1,1)),
+                eq(LocalDate.of(2024,1,1)), any());
+    }
+
     @Test
     void delete() {
-        underTest.delete(1L);
+        when(userService.deleteUser(1L)).thenReturn(1);
+
+        assertEquals("user 1 is deleted", underTest.delete(1L).getData());
         verify(userService).deleteUser(1L);
     }
+
+    @Test
+    void delete_whenUserDoesNotExist_thenNotReportedAsDeleted() {
+        when(userService.deleteUser(1L)).thenReturn(0);
+
+        assertEquals("user 1 does not exist", underTest.delete(1L).getData());
+        verify(userService).deleteUser(1L);
+    }
+
+    @Test
+    void deleteByIds() throws UserServiceException {
+        underTest.deleteByIds(List.of(1L, 2L));
+        verify(userBatchService).deleteUsers(List.of(1L, 2L));
+    }
+
+    @Test
+    void deleteByBirthday() throws UserServiceException {
+        underTest.deleteByBirthday(LocalDate.of(2000,1,1),
+                LocalDate.of(2024,1,1));
+        verify(userBatchService).deleteUsersByBirthday(LocalDate.of(2000,1,1),
+                LocalDate.of(2024,1,1));
+    }
+
+    private static UserDto user(Long version) {
+        return new UserDto(1L,
+                "email@test.com",
+                "firstName",
+                "lastName",
+                LocalDate.now().minusYears(20),
+                "address",
+                "+123456789098",
+                version);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+package org.mvasylchuk.userservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mvasylchuk.userservice.UserRequests.request;
+
+/**
+ * Closes its context afterwards, so that the connections of the cached contexts stay below the test server limit.
+ */
+@SpringBootTest(properties = "userService.emailFilter.enabled=true")
+@DirtiesContext
+class UserEmailFilterTest {
+    private static final LocalDate BIRTH_DATE = LocalDate.now().minusYears(20);
+
+    @Autowired
+    UserService userService;
+    @Autowired
+    UserBatchService userBatchService;
+    @Autowired
+    UserEmailFilter userEmailFilter;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    DataSource dataSource;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        awaitBuilt(userEmailFilter);
+    }
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+        jdbcTemplate.update("DELETE FROM user_changes");
+    }
+
+    @Test
+    void writes_addEmailsAtOnce() throws UserServiceException {
+        UserDto created = userService.createUser(request("created@test.com"));
+        userService.updateSomeUserFields(created.getId(), new UpdateUserRequest("updated@test.com", null, null, null, null, null));
+        userBatchService.createUsers(List.of(request("batch@test.com")));
+
+        assertTrue(userEmailFilter.mightContain("CREATED@test.com"));
+        assertTrue(userEmailFilter.mightContain("updated@test.com"));
+        assertTrue(userEmailFilter.mightContain("batch@test.com"));
+        assertFalse(userEmailFilter.mightContain("absent@test.com"));
+    }
+
+    @Test
+    void createUser_whenFilterMissedEmail_thenUniqueKeyRejectsIt() {
+        // written behind the back of the filter, as another instance would
+        jdbcTemplate.update("INSERT INTO users (email, first_name, last_name, birth_date, version) " +
+                "VALUES ('other@test.com', 'firstName', 'lastName', ?, 0)", BIRTH_DATE);
+        assertFalse(userEmailFilter.mightContain("other@test.com"));
+
+        UserServiceException exception = assertThrows(UserServiceException.class, () -> userService.createUser(request("other@test.com")));
+        assertEquals(UserService.EMAIL_EXISTS_ERROR, exception.getMessage());
+        assertTrue(userEmailFilter.mightContain("other@test.com"));
+        assertEquals(1, userRepository.count());
+    }
+
+    @Test
+    void rebuild_dropsDeletedEmails() throws UserServiceException {
+        UserDto user = userService.createUser(request("deleted@test.com"));
+        userService.deleteUser(user.getId());
+        assertTrue(userEmailFilter.mightContain("deleted@test.com"));
+
+        userEmailFilter.rebuild();
+
+        assertFalse(userEmailFilter.mightContain("deleted@test.com"));
+    }
+
+    @Test
+    void falsePositiveRate_staysNearConfiguredRate() throws InterruptedException {
+        try (UserEmailFilter filter = new UserEmailFilter(true, 10_000, 0.01, Duration.ofHours(1), dataSource)) {
+            awaitBuilt(filter);
+            for (int i = 0; i < 10_000; i++) {
+                filter.put("user" + i + "@test.com");
+            }
+
+            int falsePositives = 0;
+            for (int i = 0; i < 10_000; i++) {
+                assertTrue(filter.mightContain("user" + i + "@test.com"));
+                if (filter.mightContain("other" + i + "@test.com")) {
+                    falsePositives++;
+                }
+            }
+            assertThat(falsePositives).isLessThan(200);
+        }
+    }
+
+    private static void awaitBuilt(UserEmailFilter filter) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!filter.isReady()) {
+            assertTrue(System.nanoTime() < deadline, "filter was not built in time");
+            Thread.sleep(50);
+        }
+    }
+}
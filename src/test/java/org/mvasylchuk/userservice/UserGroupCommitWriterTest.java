@@ -0,0 +1,119 @@
+package org.mvasylchuk.userservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.CreateUserResult;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mvasylchuk.userservice.UserRequests.request;
+
+@SpringBootTest(properties = {
+        "userService.groupCommit.enabled=true",
+        "userService.groupCommit.window=50ms"
+})
+class UserGroupCommitWriterTest {
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private UserRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void createUser_whenConcurrent_thenEachCallerGetsItsOwnResult() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<UserDto>> created = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                CreateUserRequest request = request("email" + i + "@test.com");
+                created.add(executor.submit(() -> userService.createUser(request)));
+            }
+            Future<UserDto> duplicate = executor.submit(() -> userService.createUser(request("email0@test.com")));
+
+            List<UserDto> users = new ArrayList<>();
+            for (Future<UserDto> user : created) {
+                try {
+                    users.add(user.get());
+                } catch (ExecutionException e) {
+                    users.add(null);
+                }
+            }
+            List<UserDto> all = new ArrayList<>(users);
+            try {
+                all.add(duplicate.get());
+            } catch (ExecutionException e) {
+                assertEquals(UserService.EMAIL_EXISTS_ERROR, e.getCause().getMessage());
+            }
+
+            // whichever of the two requests for email0 came first wins
+            assertThat(all).filteredOn(user -> user != null).hasSize(10);
+            assertThat(users.subList(1, 10)).allSatisfy(user -> assertEquals(0L, user.getVersion()));
+            assertEquals(10, repository.count());
+            for (UserDto user : all) {
+                if (user != null) {
+                    assertEquals(user.getEmail(), repository.findById(user.getId()).orElseThrow().getEmail());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void createUser_whenEmailExists_thenShouldThrowError() throws UserServiceException {
+        userService.createUser(request("email@test.com"));
+
+        UserServiceException actual = assertThrows(UserServiceException.class,
+                () -> userService.createUser(request("email@test.com")));
+
+        assertEquals(UserService.EMAIL_EXISTS_ERROR, actual.getMessage());
+    }
+
+    @Test
+    void createUser_whenGroupFailsWithError_thenWriterKeepsRunning() throws UserServiceException {
+        UserBatchService batchService = mock(UserBatchService.class);
+        when(batchService.createUsers(any()))
+                .thenThrow(new StackOverflowError())
+                .thenReturn(List.of(CreateUserResult.created(7L)));
+        UserGroupCommitWriter writer = new UserGroupCommitWriter(true, 10, Duration.ofMillis(1), 10,
+                Duration.ofMillis(100), Duration.ofSeconds(10), batchService);
+        try {
+            assertThrows(IllegalStateException.class, () -> writer.createUser(request("failed@test.com")));
+            assertEquals(7L, writer.createUser(request("created@test.com")).getId());
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    void createUser_whenGroupTakesTooLong_thenBusy() {
+        UserBatchService batchService = mock(UserBatchService.class);
+        when(batchService.createUsers(any())).thenAnswer(invocation -> {
+            TimeUnit.SECONDS.sleep(10);
+            return List.of(CreateUserResult.created(7L));
+        });
+        UserGroupCommitWriter writer = new UserGroupCommitWriter(true, 10, Duration.ofMillis(1), 10,
+                Duration.ofMillis(100), Duration.ofMillis(200), batchService);
+        try {
+            assertThrows(UserServiceBusyException.class, () -> writer.createUser(request("slow@test.com")));
+        } finally {
+            writer.shutdown();
+        }
+    }
+}
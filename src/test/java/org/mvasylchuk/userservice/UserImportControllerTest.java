@@ -0,0 +1,67 @@
+package org.mvasylchuk.userservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+@SpringBootTest
+class UserImportControllerTest {
+    @Autowired
+    UserImportController underTest;
+    @MockBean
+    UserImportService userImportService;
+
+    @AfterEach
+    void tearDown() {
+        verifyNoMoreInteractions(userImportService);
+    }
+
+    @Test
+    void start() throws UserServiceException, IOException {
+        InputStream body = new ByteArrayInputStream(new byte[0]);
+        underTest.start("text/csv; charset=UTF-8", body);
+
+        verify(userImportService).startImport(UserImportFormat.CSV, body);
+    }
+
+    @Test
+    void start_whenContentTypeIsNotSupported_thenError() {
+        UserServiceException actual = assertThrows(UserServiceException.class,
+                () -> underTest.start("application/json", new ByteArrayInputStream(new byte[0])));
+
+        assertEquals("Import supports application/x-ndjson and text/csv only", actual.getMessage());
+    }
+
+    @Test
+    void resume() throws UserServiceException, IOException {
+        InputStream body = new ByteArrayInputStream(new byte[0]);
+        underTest.resume(1L, "application/x-ndjson", body);
+
+        verify(userImportService).resumeImport(1L, UserImportFormat.NDJSON, body);
+    }
+
+    @Test
+    void get() throws UserServiceException {
+        underTest.get(1L);
+
+        verify(userImportService).getImport(1L);
+    }
+
+    @Test
+    void rejections() throws UserServiceException {
+        underTest.rejections(1L, 10L, 20);
+
+        verify(userImportService).getRejections(1L, 10L, 20);
+    }
+}
@@ -0,0 +1,136 @@
+package org.mvasylchuk.userservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mvasylchuk.userservice.dto.UserImportDto;
+import org.mvasylchuk.userservice.dto.UserImportRejectionDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "userService.import.chunkSize=2")
+class UserImportServiceTest {
+    private static final String ADULT = LocalDate.now().minusYears(20).toString();
+    private static final String CHILD = LocalDate.now().minusYears(2).toString();
+
+    @Autowired
+    private UserImportService underTest;
+    @Autowired
+    private UserRepository repository;
+    @Autowired
+    private UserImportRepository userImportRepository;
+
+    @AfterEach
+    void tearDown() {
+        userImportRepository.deleteAll();
+        repository.deleteAll();
+    }
+
+    @Test
+    void startImport_whenNdjson() throws IOException, UserServiceException {
+        String file = ndjson("email1@test.com", ADULT) +
+                "\n" +
+                "{not json}\n" +
+                ndjson("email2@test.com", CHILD) +
+                ndjson("email1@test.com", ADULT) +
+                ndjson("email3@test.com", ADULT);
+
+        UserImportDto actual = underTest.startImport(UserImportFormat.NDJSON, stream(file));
+
+        assertEquals("COMPLETED", actual.getStatus());
+        assertEquals(5, actual.getProcessedRecords());
+        assertEquals(2, actual.getCreatedRecords());
+        assertEquals(3, actual.getRejectedRecords());
+        assertThat(underTest.getRejections(actual.getId(), 0, 10)).containsExactly(
+                new UserImportRejectionDto(2, "Record is not a valid user JSON object"),
+                new UserImportRejectionDto(3, UserService.MIN_AGE_ERROR),
+                new UserImportRejectionDto(4, UserService.EMAIL_EXISTS_ERROR));
+        assertEquals(2, repository.count());
+    }
+
+    @Test
+    void startImport_whenCsv() throws IOException, UserServiceException {
+        String file = "email,firstName,lastName,birthDate,address,phoneNumber\n" +
+                "email1@test.com,first,last," + ADULT + ",\"Street 1, City\",+123\n" +
+                "email2@test.com,first,last,not a date,,\n" +
+                "email3@test.com,first,last," + ADULT + ",,\n";
+
+        UserImportDto actual = underTest.startImport(UserImportFormat.CSV, stream(file));
+
+        assertEquals("COMPLETED", actual.getStatus());
+        assertEquals(3, actual.getProcessedRecords());
+        assertEquals(2, actual.getCreatedRecords());
+        assertThat(underTest.getRejections(actual.getId(), 0, 10)).containsExactly(
+                new UserImportRejectionDto(2, "birthDate: must be a date in yyyy-MM-dd format"));
+        assertEquals("Street 1, City", repository.findAll().stream()
+                .filter(user -> user.getEmail().equals("email1@test.com"))
+                .findFirst()
+                .orElseThrow()
+                .getAddress());
+    }
+
+    @Test
+    void resumeImport_whenInterrupted_thenContinuesAfterLastCommittedChunk() throws IOException, UserServiceException {
+        String file = ndjson("email1@test.com", ADULT) +
+                ndjson("email2@test.com", ADULT) +
+                ndjson("email3@test.com", ADULT) +
+                ndjson("email4@test.com", ADULT) +
+                ndjson("email5@test.com", ADULT);
+        byte[] bytes = file.getBytes(StandardCharsets.UTF_8);
+        int interruptAt = file.indexOf("email4");
+
+        assertThrows(IOException.class, () -> underTest.startImport(UserImportFormat.NDJSON, interruptedStream(bytes, interruptAt)));
+        Long id = userImportRepository.findAll().get(0).getId();
+        UserImportDto interrupted = underTest.getImport(id);
+        assertEquals("FAILED", interrupted.getStatus());
+        assertEquals(2, interrupted.getProcessedRecords());
+
+        UserImportDto actual = underTest.resumeImport(id, UserImportFormat.NDJSON, new ByteArrayInputStream(bytes));
+
+        assertEquals("COMPLETED", actual.getStatus());
+        assertEquals(5, actual.getProcessedRecords());
+        assertEquals(5, actual.getCreatedRecords());
+        assertEquals(0, actual.getRejectedRecords());
+        assertEquals(5, repository.count());
+    }
+
+    @Test
+    void resumeImport_whenCompleted_thenError() throws IOException {
+        UserImportDto completed = underTest.startImport(UserImportFormat.NDJSON, stream(ndjson("email1@test.com", ADULT)));
+
+        UserServiceException actual = assertThrows(UserServiceException.class,
+                () -> underTest.resumeImport(completed.getId(), UserImportFormat.NDJSON, stream("")));
+        assertEquals("Import is already completed", actual.getMessage());
+    }
+
+    private static String ndjson(String email, String birthDate) {
+        return "{\"email\":\"" + email + "\",\"firstName\":\"first\",\"lastName\":\"last\",\"birthDate\":\"" + birthDate + "\"}\n";
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static InputStream interruptedStream(byte[] bytes, int failAt) {
+        return new InputStream() {
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                if (position == failAt) {
+                    throw new IOException("Connection reset");
+                }
+                return bytes[position++];
+            }
+        };
+    }
+}
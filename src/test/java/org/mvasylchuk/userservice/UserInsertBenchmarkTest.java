@@ -0,0 +1,78 @@
+package org.mvasylchuk.userservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Compares insert throughput of the pooled id allocation against the previous one-sequence-call-per-row behaviour.
+ * Run with {@code mvn test -Dtest=UserInsertBenchmarkTest -Dbenchmark=true}.
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class UserInsertBenchmarkTest {
+    private static final int ROWS = 20_000;
+
+    @Autowired
+    private UserRepository repository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAllInBatch();
+    }
+
+    @Test
+    void insertThroughput() {
+        insertWithSequenceCallPerRow(1_000);
+        repository.deleteAllInBatch();
+        insertPooled(1_000, "warmup");
+        repository.deleteAllInBatch();
+
+        long perRowNanos = insertWithSequenceCallPerRow(ROWS);
+        repository.deleteAllInBatch();
+        long pooledNanos = insertPooled(ROWS, "pooled");
+
+        report("sequence call per row", perRowNanos);
+        report("pooled allocation + JDBC batching", pooledNanos);
+    }
+
+    private long insertWithSequenceCallPerRow(int rows) {
+        long start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < rows; i++) {
+                Long id = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR user_id_seq", Long.class);
+                jdbcTemplate.update("INSERT INTO users (id, email, first_name, last_name, birth_date) VALUES (?, ?, ?, ?, ?)",
+                        id, "per-row" + i + "@test.com", "first", "last", Date.valueOf(LocalDate.of(1990, 1, 1)));
+            }
+        });
+        return System.nanoTime() - start;
+    }
+
+    private long insertPooled(int rows, String prefix) {
+        List<UserEntity> users = IntStream.range(0, rows)
+                .mapToObj(i -> new UserEntity(null, prefix + i + "@test.com", "first", "last",
+                        LocalDate.of(1990, 1, 1), null, null))
+                .toList();
+        long start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status -> repository.saveAll(users));
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String mode, long nanos) {
+        System.out.printf("%-35s %8d rows in %6d ms (%8.0f rows/s)%n",
+                mode, ROWS, nanos / 1_000_000, ROWS / (nanos / 1_000_000_000.0));
+    }
+}
@@ -0,0 +1,92 @@
+package org.mvasylchuk.userservice;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.search.Search;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mvasylchuk.userservice.UserRequests.request;
+
+@SpringBootTest
+class UserMetricsTest {
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private UserBatchService userBatchService;
+    @Autowired
+    private UserController userController;
+    @Autowired
+    private ExceptionHandlingController exceptionHandlingController;
+    @Autowired
+    private UserRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void serviceMethodsAndRepositoryQueriesAreTimed() throws UserServiceException {
+        long services = timerCount(meterRegistry.find("user.service").tag("method", "createUser"));
+        long queries = timerCount(meterRegistry.find("spring.data.repository.invocations")
+                .tag("repository", "UserRepository")
+                .tag("method", "existsByEmail"));
+
+        userService.createUser(request("email@test.com"));
+
+        assertEquals(services + 1, timerCount(meterRegistry.find("user.service").tag("method", "createUser")));
+        assertEquals(queries + 1, timerCount(meterRegistry.find("spring.data.repository.invocations")
+                .tag("repository", "UserRepository")
+                .tag("method", "existsByEmail")));
+    }
+
+    @Test
+    void rejectionsAreCountedByReason() throws UserServiceException {
+        double minAge = rejections(UserRejectionReason.MIN_AGE);
+        double duplicateEmail = rejections(UserRejectionReason.DUPLICATE_EMAIL);
+        double notFound = rejections(UserRejectionReason.NOT_FOUND);
+
+        UserServiceException error = assertThrows(UserServiceException.class,
+                () -> userService.createUser(request("email@test.com", LocalDate.now().minusYears(2))));
+        exceptionHandlingController.handle(error);
+        exceptionHandlingController.handle(assertThrows(UserServiceException.class, () -> userService.getUser(-1L)));
+        userController.createBatch(List.of(request("email1@test.com"), request("email1@test.com")));
+        // not counted by the batch service itself, so that group commit does not count its rejections twice
+        userBatchService.createUsers(List.of(request("email2@test.com"), request("email2@test.com")));
+
+        assertEquals(minAge + 1, rejections(UserRejectionReason.MIN_AGE));
+        assertEquals(duplicateEmail + 1, rejections(UserRejectionReason.DUPLICATE_EMAIL));
+        assertEquals(notFound + 1, rejections(UserRejectionReason.NOT_FOUND));
+    }
+
+    @Test
+    void unexpectedErrorsAreCounted() {
+        double errors = meterRegistry.counter("user.errors").count();
+
+        exceptionHandlingController.handle(new IllegalStateException("broken"));
+
+        assertEquals(errors + 1, meterRegistry.counter("user.errors").count());
+    }
+
+    @Test
+    void connectionPoolAndStatementMetricsAreRegistered() {
+        assertNotNull(meterRegistry.find("hikaricp.connections.active").gauge());
+        assertNotNull(meterRegistry.find("hibernate.statements").tag("status", "prepared").functionCounter());
+    }
+
+    private double rejections(UserRejectionReason reason) {
+        return meterRegistry.counter("user.rejections", "reason", UserRejectionMetrics.tag(reason)).count();
+    }
+
+    private static long timerCount(Search search) {
+        return search.timers().stream().mapToLong(timer -> timer.count()).sum();
+    }
+}
@@ -0,0 +1,240 @@
+package org.mvasylchuk.userservice;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mvasylchuk.userservice.UserRequests.request;
+
+@SpringBootTest(properties = {
+        "spring.main.web-application-type=reactive",
+        "userService.reactive.streamPageSize=2"
+})
+@AutoConfigureWebTestClient
+class UserReactiveHandlerTest {
+    private static final LocalDate BIRTH_DATE = LocalDate.now().minusYears(20);
+
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void create() {
+        UserDto user = create("reactive@test.com", BIRTH_DATE);
+
+        assertEquals("reactive@test.com", user.getEmail());
+        assertEquals(BIRTH_DATE, user.getBirthDate());
+        assertEquals(List.of("CREATED"), changeTypes(user.getId()));
+        webTestClient.get().uri("/api/users/{id}", user.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"0\"")
+                .expectBody().jsonPath("$.data.email").isEqualTo("reactive@test.com");
+    }
+
+    @Test
+    void create_whenOptionalFieldsAreMissing_thenChangeIsRecorded() {
+        long id = webTestClient.post().uri("/api/users")
+                .bodyValue(new CreateUserRequest("reactive@test.com", "firstName", "lastName", BIRTH_DATE, null, null))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(JsonNode.class)
+                .returnResult()
+                .getResponseBody()
+                .get("data").get("id").asLong();
+
+        Map<String, Object> change = jdbcTemplate.queryForMap("SELECT address, phone_number FROM user_changes WHERE user_id = ?", id);
+        assertNull(change.get("address"));
+        assertNull(change.get("phone_number"));
+    }
+
+    @Test
+    void create_whenRequestIsInvalid_thenError() {
+        webTestClient.post().uri("/api/users")
+                .bodyValue(request("not an email", BIRTH_DATE))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.errorMessage").isEqualTo("email: must be a well-formed email address");
+    }
+
+    @Test
+    void create_whenEmailExists_thenError() {
+        create("reactive@test.com", BIRTH_DATE);
+
+        webTestClient.post().uri("/api/users")
+                .bodyValue(request("reactive@test.com", BIRTH_DATE))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.errorMessage").isEqualTo(UserService.EMAIL_EXISTS_ERROR);
+    }
+
+    @Test
+    void updatePartial_whenEmailIsTaken_thenError() {
+        create("taken@test.com", BIRTH_DATE);
+        UserDto user = create("reactive@test.com", BIRTH_DATE);
+
+        webTestClient.patch().uri("/api/users/{id}", user.getId())
+                .bodyValue(new UpdateUserRequest("taken@test.com", null, null, null, null, null))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.errorMessage").isEqualTo(UserService.EMAIL_EXISTS_ERROR);
+    }
+
+    @Test
+    void get_whenETagMatches_thenNotModified() {
+        UserDto user = create("reactive@test.com", BIRTH_DATE);
+
+        webTestClient.get().uri("/api/users/{id}", user.getId())
+                .header(HttpHeaders.IF_NONE_MATCH, "\"0\"")
+                .exchange()
+                .expectStatus().isNotModified();
+    }
+
+    @Test
+    void updateComplete_whenVersionIsStale_thenPreconditionFailed() {
+        UserDto user = create("reactive@test.com", BIRTH_DATE);
+        webTestClient.put().uri("/api/users/{id}", user.getId())
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .bodyValue(request("updated@test.com", BIRTH_DATE))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"")
+                .expectBody().jsonPath("$.data.email").isEqualTo("updated@test.com");
+
+        webTestClient.put().uri("/api/users/{id}", user.getId())
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .bodyValue(request("again@test.com", BIRTH_DATE))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        assertEquals(List.of("CREATED", "UPDATED"), changeTypes(user.getId()));
+    }
+
+    @Test
+    void updatePartial() {
+        UserDto user = create("reactive@test.com", BIRTH_DATE);
+
+        webTestClient.patch().uri("/api/users/{id}", user.getId())
+                .bodyValue(Map.of("firstName", "patched", "address", "new address"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"")
+                .expectBody()
+                .jsonPath("$.data.firstName").isEqualTo("patched")
+                .jsonPath("$.data.lastName").isEqualTo("lastName")
+                .jsonPath("$.data.address").isEqualTo("new address");
+    }
+
+    @Test
+    void delete() {
+        UserDto user = create("reactive@test.com", BIRTH_DATE);
+
+        webTestClient.delete().uri("/api/users/{id}", user.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.data").isEqualTo("user " + user.getId() + " is deleted");
+        webTestClient.delete().uri("/api/users/{id}", user.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.data").isEqualTo("user " + user.getId() + " does not exist");
+
+        webTestClient.get().uri("/api/users/{id}", user.getId())
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.errorMessage").isEqualTo(UserService.NOT_FOUND_ERROR);
+        assertEquals(List.of("CREATED", "DELETED"), changeTypes(user.getId()));
+    }
+
+    @Test
+    void searchByBirthday_streamsAllPages() {
+        for (int i = 0; i < 5; i++) {
+            create("user" + i + "@test.com", BIRTH_DATE.minusDays(i));
+        }
+        create("outside@test.com", BIRTH_DATE.minusYears(1));
+
+        Flux<UserDto> users = webTestClient.get()
+                .uri("/api/users/stream?from={from}&to={to}", BIRTH_DATE.minusDays(4), BIRTH_DATE)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(UserDto.class)
+                .getResponseBody();
+
+        StepVerifier.create(users.map(UserDto::getEmail), 1)
+                .expectNext("user4@test.com")
+                .thenRequest(4)
+                .expectNext("user3@test.com", "user2@test.com", "user1@test.com", "user0@test.com")
+                .thenRequest(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void searchByBirthday_whenFromIsAfterTo_thenError() {
+        webTestClient.get()
+                .uri("/api/users?from={from}&to={to}", BIRTH_DATE, BIRTH_DATE.minusDays(1))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.errorMessage").isEqualTo("From should not exceed to ");
+    }
+
+    @Test
+    void searchByBirthdayPage() {
+        for (int i = 0; i < 3; i++) {
+            create("user" + i + "@test.com", BIRTH_DATE.minusDays(i));
+        }
+
+        webTestClient.get()
+                .uri("/api/users/page?from={from}&to={to}&limit=2", BIRTH_DATE.minusDays(2), BIRTH_DATE)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.data.users.length()").isEqualTo(2)
+                .jsonPath("$.data.users[0].email").isEqualTo("user2@test.com")
+                .jsonPath("$.data.next").isNotEmpty();
+    }
+
+    private UserDto create(String email, LocalDate birthDate) {
+        JsonNode data = webTestClient.post().uri("/api/users")
+                .bodyValue(request(email, birthDate))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(JsonNode.class)
+                .returnResult()
+                .getResponseBody()
+                .get("data");
+        return objectMapper.convertValue(data, UserDto.class);
+    }
+
+    private List<String> changeTypes(Long userId) {
+        return jdbcTemplate.queryForList("SELECT type FROM user_changes WHERE user_id = ? ORDER BY id", String.class, userId);
+    }
+}
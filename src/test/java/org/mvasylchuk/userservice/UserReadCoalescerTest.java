@@ -0,0 +1,126 @@
+package org.mvasylchuk.userservice;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The context is closed after the class, so that the test database is not left with the connections of one more
+ * cached context.
+ */
+@SpringBootTest(properties = {
+        "userService.coalescing.enabled=true",
+        "userService.coalescing.window=50ms"
+})
+@DirtiesContext
+class UserReadCoalescerTest {
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private UserRepository repository;
+    @Autowired
+    private UserShardedStore userShardedStore;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void getUser_whenConcurrent_thenReadInBatches() throws Exception {
+        List<UserEntity> saved = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            saved.add(repository.save(new UserEntity(null, "email" + i + "@test.com", "firstName", "lastName",
+                    LocalDate.of(2000, 1, 1), "address", "+123456789098")));
+        }
+        long absent = saved.get(9).getId() + 1000;
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        long queries = statistics.getQueryExecutionCount();
+
+        ExecutorService executor = Executors.newFixedThreadPool(11);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<UserDto>> found = new ArrayList<>();
+            for (UserEntity user : saved) {
+                found.add(executor.submit(() -> {
+                    start.await();
+                    return userService.getUser(user.getId());
+                }));
+            }
+            Future<UserDto> missing = executor.submit(() -> {
+                start.await();
+                return userService.getUser(absent);
+            });
+            start.countDown();
+
+            for (int i = 0; i < saved.size(); i++) {
+                assertEquals(saved.get(i).getEmail(), found.get(i).get().getEmail());
+            }
+            ExecutionException actual = assertThrows(ExecutionException.class, missing::get);
+            assertEquals(UserService.NOT_FOUND_ERROR, actual.getCause().getMessage());
+        } finally {
+            executor.shutdown();
+        }
+        // one query per batch rather than one per user
+        assertThat(statistics.getQueryExecutionCount() - queries).isLessThan(saved.size() + 1);
+    }
+
+    @Test
+    void findUser_whenBatchFailsWithError_thenReaderKeepsRunning() {
+        UserRepository userRepository = mock(UserRepository.class);
+        UserDto user = new UserDto(7L, "email@test.com", "firstName", "lastName", LocalDate.of(2000, 1, 1), null, null, 0L);
+        when(userRepository.findAllDtosByIds(any()))
+                .thenThrow(new StackOverflowError())
+                .thenReturn(List.of(user));
+        UserReadCoalescer coalescer = coalescer(userRepository, Duration.ofSeconds(10));
+        try {
+            CompletionException actual = assertThrows(CompletionException.class, () -> coalescer.findUser(7L).join());
+            assertInstanceOf(StackOverflowError.class, actual.getCause());
+            assertEquals(Optional.of(user), coalescer.findUser(7L).join());
+        } finally {
+            coalescer.shutdown();
+        }
+    }
+
+    @Test
+    void findUser_whenBatchTakesTooLong_thenBusy() {
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findAllDtosByIds(any())).thenAnswer(invocation -> {
+            TimeUnit.SECONDS.sleep(10);
+            return List.of();
+        });
+        UserReadCoalescer coalescer = coalescer(userRepository, Duration.ofMillis(200));
+        try {
+            CompletionException actual = assertThrows(CompletionException.class, () -> coalescer.findUser(7L).join());
+            assertInstanceOf(UserServiceBusyException.class, actual.getCause());
+        } finally {
+            coalescer.shutdown();
+        }
+    }
+
+    private UserReadCoalescer coalescer(UserRepository userRepository, Duration readTimeout) {
+        return new UserReadCoalescer(true, 10, Duration.ofMillis(1), 10, Duration.ofMillis(100), readTimeout,
+                userRepository, userShardedStore);
+    }
+}
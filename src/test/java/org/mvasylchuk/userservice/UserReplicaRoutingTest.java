@@ -0,0 +1,178 @@
+package org.mvasylchuk.userservice;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.servlet.http.Cookie;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mvasylchuk.userservice.UserRequests.request;
+
+/**
+ * A second database of the test server stands in for the replica, it gets the schema but none of the writes. Closes
+ * its context afterwards, as its replica pools add to the connections of the cached contexts.
+ */
+@SpringBootTest(properties = {
+        "userService.replicas.enabled=true",
+        "userService.replicas.urls=" + UserReplicaRoutingTest.DOWN_URL + "," + UserReplicaRoutingTest.REPLICA_URL,
+        "userService.replicas.connectionTimeout=250ms"
+})
+@DirtiesContext
+class UserReplicaRoutingTest {
+    static final String REPLICA_URL = "jdbc:mariadb://localhost:3306/user-service-test-replica?createDatabaseIfNotExist=true";
+    static final String DOWN_URL = "jdbc:mariadb://localhost:1/user-service-test-replica";
+    private static final LocalDate BIRTH_DATE = LocalDate.now().minusYears(20);
+
+    @Autowired
+    UserService userService;
+    @Autowired
+    UserRepository userRepository;
+    @Autowired
+    UserReplicaDataSource replicaDataSource;
+    @Autowired
+    HikariDataSource userPrimaryDataSource;
+    @Autowired
+    UserReadYourWritesFilter readYourWritesFilter;
+
+    static HikariDataSource replicaPool;
+    static JdbcTemplate replica;
+
+    @BeforeAll
+    static void setUpReplica() {
+        replicaPool = new HikariDataSource();
+        replicaPool.setJdbcUrl(REPLICA_URL);
+        replicaPool.setUsername("root");
+        replicaPool.setPassword("root");
+        replicaPool.setMaximumPoolSize(1);
+        Flyway.configure().dataSource(replicaPool).load().migrate();
+        replica = new JdbcTemplate(replicaPool);
+    }
+
+    @AfterAll
+    static void tearDownReplica() {
+        replicaPool.close();
+    }
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+        replica.update("DELETE FROM users");
+    }
+
+    @Test
+    void readOnlyTransactions_readFromReplica() throws UserServiceException {
+        UserDto user = userService.createUser(request("primary@test.com", BIRTH_DATE));
+
+        assertEquals(user, userService.getUser(user.getId()));
+        assertThat(userService.searchUsersByBirthday(BIRTH_DATE, BIRTH_DATE)).isEmpty();
+
+        replica.update("INSERT INTO users (id, email, first_name, last_name, birth_date, version) VALUES (?, ?, ?, ?, ?, 0)",
+                user.getId(), "replica@test.com", "firstName", "lastName", BIRTH_DATE);
+        assertThat(userService.searchUsersByBirthday(BIRTH_DATE, BIRTH_DATE))
+                .extracting(UserDto::getEmail)
+                .containsExactly("replica@test.com");
+    }
+
+    @Test
+    void replicaThatIsDown_isSkipped() throws UserServiceException {
+        for (int i = 0; i < 4; i++) {
+            assertThat(userService.searchUsersByBirthday(BIRTH_DATE, BIRTH_DATE)).isEmpty();
+        }
+
+        assertEquals(List.of("user-replica-2"), replicaDataSource.getHealthyReplicas());
+    }
+
+    @Test
+    void allReplicasDown_readFromPrimary() throws Exception {
+        HikariDataSource down = new HikariDataSource();
+        down.setJdbcUrl(DOWN_URL);
+        down.setConnectionTimeout(250);
+        down.setInitializationFailTimeout(-1);
+        try (UserReplicaDataSource dataSource = new UserReplicaDataSource(userPrimaryDataSource,
+                List.of(down),
+                Duration.ofMinutes(1),
+                Duration.ofSeconds(10));
+             Connection connection = dataSource.getConnection()) {
+            assertEquals("user-service-test", connection.getCatalog());
+            assertThat(dataSource.getHealthyReplicas()).isEmpty();
+        }
+    }
+
+    @Test
+    void replicaPoolExhausted_readFromPrimaryAndStaysUp() throws Exception {
+        HikariDataSource busy = new HikariDataSource();
+        busy.setJdbcUrl(REPLICA_URL);
+        busy.setUsername("root");
+        busy.setPassword("root");
+        busy.setPoolName("user-replica-busy");
+        busy.setMaximumPoolSize(1);
+        busy.setConnectionTimeout(250);
+        try (Connection taken = busy.getConnection();
+             UserReplicaDataSource dataSource = new UserReplicaDataSource(userPrimaryDataSource,
+                     List.of(busy),
+                     Duration.ofMinutes(1),
+                     Duration.ofSeconds(10))) {
+            dataSource.checkHealth();
+            try (Connection connection = dataSource.getConnection()) {
+                assertEquals("user-service-test", connection.getCatalog());
+            }
+            assertEquals(List.of("user-replica-busy"), dataSource.getHealthyReplicas());
+        }
+    }
+
+    @Test
+    void readYourWrites_afterMutation_readsFromPrimary() throws Exception {
+        MockHttpServletResponse createResponse = new MockHttpServletResponse();
+        List<UserDto> created = new ArrayList<>();
+        readYourWritesFilter.doFilter(new MockHttpServletRequest("POST", "/api/users"), createResponse,
+                (request, response) -> created.add(create(request("primary@test.com", BIRTH_DATE))));
+        Cookie cookie = createResponse.getCookie(UserReadYourWritesFilter.COOKIE);
+        assertNotNull(cookie);
+
+        MockHttpServletRequest withCookie = new MockHttpServletRequest("GET", "/api/users");
+        withCookie.setCookies(cookie);
+        List<UserDto> found = new ArrayList<>();
+        readYourWritesFilter.doFilter(withCookie, new MockHttpServletResponse(),
+                (request, response) -> found.addAll(search()));
+        assertEquals(created, found);
+
+        List<UserDto> foundWithoutCookie = new ArrayList<>();
+        readYourWritesFilter.doFilter(new MockHttpServletRequest("GET", "/api/users"), new MockHttpServletResponse(),
+                (request, response) -> foundWithoutCookie.addAll(search()));
+        assertThat(foundWithoutCookie).isEmpty();
+    }
+
+    private UserDto create(CreateUserRequest request) {
+        try {
+            return userService.createUser(request);
+        } catch (UserServiceException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<UserDto> search() {
+        try {
+            return userService.searchUsersByBirthday(BIRTH_DATE, BIRTH_DATE);
+        } catch (UserServiceException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.mvasylchuk.userservice;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+        "org.mvasylchuk.userservice.UserRepositoryQueryPlanTest$LastStatementInspector")
+class UserRepositoryQueryPlanTest {
+    private static final String BIRTH_DATE_INDEX = "users_birth_date_id_idx";
+    private static final String BIRTH_MONTH_DAY_INDEX = "users_birth_month_day_id_idx";
+
+    @Autowired
+    private UserRepository repository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.batchUpdate("INSERT INTO users (email, first_name, last_name, birth_date) VALUES (?, ?, ?, ?)",
+                IntStream.range(0, 2000)
+                        .mapToObj(i -> new Object[]{"email" + i + "@test.com", "first", "last",
+                                Date.valueOf(LocalDate.of(1950, 1, 1).plusDays(i * 10L))})
+                        .toList());
+        jdbcTemplate.execute("ANALYZE TABLE users");
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.deleteAllInBatch();
+    }
+
+    @Test
+    void findAllByBirthDateIsBetween_usesBirthDateIndex() {
+        repository.findAllByBirthDateIsBetween(LocalDate.of(2000, 1, 1), LocalDate.of(2000, 2, 1));
+
+        assertEquals(BIRTH_DATE_INDEX, explainKey(LocalDate.of(2000, 1, 1), LocalDate.of(2000, 2, 1)));
+    }
+
+    @Test
+    void findPageByBirthDate_usesBirthDateIndex() {
+        repository.findPageByBirthDate(LocalDate.of(2000, 1, 1), 0L, LocalDate.of(2000, 2, 1), Limit.of(10));
+
+        assertEquals(BIRTH_DATE_INDEX, explainKey(LocalDate.of(2000, 1, 1), LocalDate.of(2000, 2, 1), LocalDate.of(2000, 1, 1), 0L, 0, 10));
+    }
+
+    @Test
+    void findPageByBirthMonthDay_usesBirthMonthDayIndexWithoutSorting() {
+        repository.findPageByBirthMonthDay(1228, 0L, 1231, Limit.of(10));
+
+        Map<String, Object> plan = explain(1228, 1231, 1228, 0L, 0, 10);
+        assertEquals(BIRTH_MONTH_DAY_INDEX, plan.get("key"));
+        assertThat((String) plan.get("Extra")).doesNotContain("filesort");
+    }
+
+    @Test
+    void findPageByPrefix_usesIndexOfSearchedField() {
+        repository.findPageByPrefix(UserSearchCursor.start(UserSearchField.EMAIL, "email1"), "email1", 10);
+        assertEquals("users_email_lower_id_idx", explainKey("email1", "email1%", "email1", Long.MIN_VALUE, 10));
+
+        repository.findPageByPrefix(UserSearchCursor.start(UserSearchField.FIRST_NAME, "fir"), "fir", 10);
+        Map<String, Object> plan = explain("fir", "fir%", "fir", Long.MIN_VALUE, "fir%", "fir%", 10);
+        assertEquals("users_first_name_lower_id_idx", plan.get("key"));
+        assertThat((String) plan.get("Extra")).doesNotContain("filesort");
+    }
+
+    private String explainKey(Object... parameters) {
+        return (String) explain(parameters).get("key");
+    }
+
+    private Map<String, Object> explain(Object... parameters) {
+        List<Map<String, Object>> plan = jdbcTemplate.queryForList("EXPLAIN " + LastStatementInspector.lastSql, parameters);
+        assertEquals(1, plan.size());
+        return plan.get(0);
+    }
+
+    public static class LastStatementInspector implements StatementInspector {
+        static volatile String lastSql;
+
+        @Override
+        public String inspect(String sql) {
+            lastSql = sql;
+            return sql;
+        }
+    }
+}
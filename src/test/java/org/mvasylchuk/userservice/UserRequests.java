@@ -0,0 +1,21 @@
+package org.mvasylchuk.userservice;
+
+import org.mvasylchuk.userservice.dto.CreateUserRequest;
+
+import java.time.LocalDate;
+
+/**
+ * Valid create requests for tests.
+ */
+final class UserRequests {
+    private UserRequests() {
+    }
+
+    static CreateUserRequest request(String email) {
+        return request(email, LocalDate.now().minusYears(20));
+    }
+
+    static CreateUserRequest request(String email, LocalDate birthDate) {
+        return new CreateUserRequest(email, "firstName", "lastName", birthDate, "address", "+123456789098");
+    }
+}
@@ -6,12 +6,18 @@ import org.junit.jupiter.api.Test;
 import org.mvasylchuk.userservice.dto.CreateUserRequest;
 import org.mvasylchuk.userservice.dto.UpdateUserRequest;
 import org.mvasylchuk.userservice.dto.UserDto;
+import org.mvasylchuk.userservice.dto.UserMultiGetResult;
+import org.mvasylchuk.userservice.dto.UserPage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.LongStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -22,6 +28,8 @@ class UserServiceApplicationTests {
     private UserService underTest;
     @Autowired
     private UserRepository repository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     @AfterEach
     void tearDown() {
@@ -179,6 +187,77 @@ class UserServiceApplicationTests {
         assertEquals("User is not found", actual.getMessage());
     }
 
+    @Test
+    void updateAllUserFields_whenEmailIsTaken_thenShouldThrowError() {
+        saveUser("taken@email.com", LocalDate.of(2000, 1, 1));
+        UserEntity saved = saveUser("email@email.com", LocalDate.of(2000, 1, 1));
+
+        UserServiceException actual = assertThrows(UserServiceException.class, () -> underTest.updateAllUserFields(saved.getId(),
+                new CreateUserRequest("TAKEN@email.com", "first", "last", LocalDate.of(2000, 1, 1), null, null)));
+        assertEquals(UserService.EMAIL_EXISTS_ERROR, actual.getMessage());
+    }
+
+    @Test
+    void updateSomeUserFields_whenEmailIsTaken_thenShouldThrowError() throws UserServiceException {
+        saveUser("taken@email.com", LocalDate.of(2000, 1, 1));
+        UserEntity saved = saveUser("email@email.com", LocalDate.of(2000, 1, 1));
+
+        UserServiceException actual = assertThrows(UserServiceException.class, () -> underTest.updateSomeUserFields(saved.getId(),
+                new UpdateUserRequest("taken@email.com", null, null, null, null, null)));
+        assertEquals(UserService.EMAIL_EXISTS_ERROR, actual.getMessage());
+        assertEquals("email@email.com", underTest.getUser(saved.getId()).getEmail());
+    }
+
+    @Test
+    void updateSomeUserFields_whenRolledBack_thenCacheKeepsCommittedUser() throws UserServiceException {
+        UserEntity saved = saveUser("email@email.com", LocalDate.of(2000, 1, 1));
+        underTest.getUser(saved.getId());
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            try {
+                underTest.updateSomeUserFields(saved.getId(), new UpdateUserRequest(null, "rolledBack", null, null, null, null));
+            } catch (UserServiceException e) {
+                throw new IllegalStateException(e);
+            }
+            status.setRollbackOnly();
+        });
+
+        assertEquals(saved.getFirstName(), underTest.getUser(saved.getId()).getFirstName());
+    }
+
+    @Test
+    void getUserByEmail_ignoresCase() throws UserServiceException {
+        UserEntity saved = saveUser("email@email.com", LocalDate.of(2000, 1, 1));
+
+        assertEquals(saved.getId(), underTest.getUserByEmail("EMAIL@email.com").getId());
+        UserServiceException actual = assertThrows(UserServiceException.class, () -> underTest.getUserByEmail("absent@email.com"));
+        assertEquals(UserService.NOT_FOUND_ERROR, actual.getMessage());
+    }
+
+    @Test
+    void getUsers_keepsRequestOrderAndReportsMissingIds() throws UserServiceException {
+        UserEntity first = saveUser("first@email.com", LocalDate.of(2000, 1, 1));
+        UserEntity second = saveUser("second@email.com", LocalDate.of(2000, 1, 2));
+        long absent = second.getId() + 1000;
+        // cached before the multi-get
+        underTest.getUser(first.getId());
+
+        UserMultiGetResult actual = underTest.getUsers(List.of(second.getId(), absent, first.getId(), second.getId()));
+
+        assertThat(actual.getUsers()).extracting(UserDto::getId).containsExactly(second.getId(), first.getId());
+        assertEquals(List.of(absent), actual.getMissingIds());
+    }
+
+    @Test
+    void getUsers_whenTooManyIds_thenError() {
+        List<Long> ids = LongStream.rangeClosed(1, 1001).boxed().toList();
+
+        UserServiceException actual = assertThrows(UserServiceException.class, () -> underTest.getUsers(ids));
+        assertEquals("Number of ids should be between 1 and 1000", actual.getMessage());
+        assertThrows(UserServiceException.class, () -> underTest.getUsers(List.of()));
+    }
+
     @Test
     void deleteUser() {
         UserEntity savedUser = repository.save(new UserEntity(null, "email1@test.com",
@@ -188,7 +267,7 @@ class UserServiceApplicationTests {
                 "address",
                 "+123456789098"));
 
-        underTest.deleteUser(savedUser.getId());
+        assertEquals(1, underTest.deleteUser(savedUser.getId()));
 
         assertTrue(repository.findById(savedUser.getId()).isEmpty());
     }
@@ -196,7 +275,7 @@ class UserServiceApplicationTests {
     @Test
     void deleteUser_whenUserDoesNotExist_thanDoesNotThrowAnyError() {
 
-        underTest.deleteUser(2022L);
+        assertEquals(0, underTest.deleteUser(2022L));
 
         assertTrue(repository.findById(2022L).isEmpty());
     }
@@ -297,6 +376,19 @@ class UserServiceApplicationTests {
         assertEquals("To register you have to be 18 years old", actual.getMessage());
     }
 
+    @Test
+    void updateSomeUserFields_whenUserIsAbsent_thenShouldThrowError() {
+        UserServiceException actual = assertThrows(UserServiceException.class, () -> underTest.updateSomeUserFields(10L,
+                new UpdateUserRequest(null,
+                        "firstName1",
+                        null,
+                        null,
+                        Optional.empty(),
+                        Optional.empty())));
+
+        assertEquals("User is not found", actual.getMessage());
+    }
+
     @Test
     void searchUsersByBirthday() throws UserServiceException {
         UserEntity first = repository.save(new UserEntity(null,
@@ -371,5 +463,250 @@ class UserServiceApplicationTests {
         assertEquals("From should not exceed to ", exception.getMessage());
     }
 
+    @Test
+    void searchUsersByBirthday_whenPaginated_thenReturnsAllUsersInBirthDateAndIdOrder() throws UserServiceException {
+        List<UserEntity> saved = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            saved.add(repository.save(new UserEntity(null,
+                    "email" + i + "@email.com",
+                    "first" + i,
+                    "last" + i,
+                    LocalDate.of(2000, 1, 1 + i / 2),
+                    "address" + i,
+                    "11111111111")));
+        }
+
+        UserPage first = underTest.searchUsersByBirthday(LocalDate.of(2000, 1, 1), LocalDate.of(2000, 12, 31), 2, null);
+        UserPage second = underTest.searchUsersByBirthday(LocalDate.of(2000, 1, 1), LocalDate.of(2000, 12, 31), 2, first.getNext());
+        UserPage third = underTest.searchUsersByBirthday(LocalDate.of(2000, 1, 1), LocalDate.of(2000, 12, 31), 2, second.getNext());
+
+        assertThat(first.getUsers()).extracting(UserDto::getId).containsExactly(saved.get(0).getId(), saved.get(1).getId());
+        assertThat(second.getUsers()).extracting(UserDto::getId).containsExactly(saved.get(2).getId(), saved.get(3).getId());
+        assertThat(third.getUsers()).extracting(UserDto::getId).containsExactly(saved.get(4).getId());
+        assertNull(third.getNext());
+    }
+
+    @Test
+    void searchUsersByBirthday_whenNextTokenIsInvalid_thenError() {
+        UserServiceException exception = assertThrows(UserServiceException.class, () -> underTest.searchUsersByBirthday(LocalDate.of(2000, 1, 1),
+                LocalDate.of(2020, 1, 1), 10, "not a token"));
+        assertEquals("Next token is invalid", exception.getMessage());
+    }
+
+    @Test
+    void searchUsersByBirthday_whenLimitExceedsMaxPageSize_thenError() {
+        UserServiceException exception = assertThrows(UserServiceException.class, () -> underTest.searchUsersByBirthday(LocalDate.of(2000, 1, 1),
+                LocalDate.of(2020, 1, 1), 1001, null));
+        assertEquals("Limit should be between 1 and 1000", exception.getMessage());
+    }
+
+    @Test
+    void searchUpcomingBirthdays_whenDaysCrossNewYear_thenReturnsUsersInBirthdayOrder() throws UserServiceException {
+        UserEntity december30 = saveUser("december30@email.com", LocalDate.of(1990, 12, 30));
+        UserEntity december31 = saveUser("december31@email.com", LocalDate.of(2001, 12, 31));
+        UserEntity january1 = saveUser("january1@email.com", LocalDate.of(1985, 1, 1));
+        UserEntity january3 = saveUser("january3@email.com", LocalDate.of(2000, 1, 3));
+        saveUser("december29@email.com", LocalDate.of(1990, 12, 29));
+        saveUser("january4@email.com", LocalDate.of(1990, 1, 4));
+
+        UserPage first = underTest.searchUpcomingBirthdays(LocalDate.of(2025, 12, 30), 5, 2, null);
+        UserPage second = underTest.searchUpcomingBirthdays(LocalDate.of(2025, 12, 30), 5, 2, first.getNext());
+
+        assertThat(first.getUsers()).extracting(UserDto::getId).containsExactly(december30.getId(), december31.getId());
+        assertThat(second.getUsers()).extracting(UserDto::getId).containsExactly(january1.getId(), january3.getId());
+        assertNull(second.getNext());
+    }
+
+    @Test
+    void searchUpcomingBirthdays_whenBornOnFebruary29_thenBirthdayIsOnFebruary28OfOtherYears() throws UserServiceException {
+        UserEntity february29 = saveUser("february29@email.com", LocalDate.of(2000, 2, 29));
+        UserEntity march1 = saveUser("march1@email.com", LocalDate.of(2000, 3, 1));
+
+        assertThat(underTest.searchUpcomingBirthdays(LocalDate.of(2025, 2, 28), 1, 10, null).getUsers())
+                .extracting(UserDto::getId).containsExactly(february29.getId());
+        assertThat(underTest.searchUpcomingBirthdays(LocalDate.of(2024, 2, 28), 1, 10, null).getUsers()).isEmpty();
+        assertThat(underTest.searchUpcomingBirthdays(LocalDate.of(2024, 2, 29), 2, 10, null).getUsers())
+                .extracting(UserDto::getId).containsExactly(february29.getId(), march1.getId());
+        // a whole year from March 1 reaches February 28 of the next year but not March 1 again
+        assertThat(underTest.searchUpcomingBirthdays(LocalDate.of(2025, 3, 1), 365, 10, null).getUsers())
+                .extracting(UserDto::getId).containsExactly(march1.getId(), february29.getId());
+    }
+
+    @Test
+    void searchUpcomingBirthdays_whenDaysAreOutOfRange_thenError() {
+        UserServiceException exception = assertThrows(UserServiceException.class,
+                () -> underTest.searchUpcomingBirthdays(LocalDate.of(2025, 1, 1), 367, 10, null));
+        assertEquals("Days should be between 1 and 366", exception.getMessage());
+    }
+
+    @Test
+    void searchUsers_ranksEmailThenLastNameThenFirstNameMatches() throws UserServiceException {
+        UserEntity byFirstName = repository.save(new UserEntity(null, "a@email.com", "Anna", "Smith",
+                LocalDate.of(2000, 1, 1), null, null));
+        UserEntity byLastName = repository.save(new UserEntity(null, "b@email.com", "Bob", "Annan",
+                LocalDate.of(2000, 1, 1), null, null));
+        UserEntity byEmailAndFirstName = repository.save(new UserEntity(null, "ANNA@email.com", "Anna", "Jones",
+                LocalDate.of(2000, 1, 1), null, null));
+        UserEntity byEmail = repository.save(new UserEntity(null, "ann@email.com", "Carl", "Brown",
+                LocalDate.of(2000, 1, 1), null, null));
+        repository.save(new UserEntity(null, "joanna@email.com", "Joanna", "Bann", LocalDate.of(2000, 1, 1), null, null));
+
+        List<UserDto> paged = new ArrayList<>();
+        String next = null;
+        do {
+            UserPage page = underTest.searchUsers(" aNN ", 1, next);
+            paged.addAll(page.getUsers());
+            next = page.getNext();
+        } while (next != null);
+
+        assertThat(paged).extracting(UserDto::getId).containsExactly(byEmail.getId(), byEmailAndFirstName.getId(),
+                byLastName.getId(), byFirstName.getId());
+        assertEquals(paged, underTest.searchUsers("ann", 10, null).getUsers());
+    }
+
+    @Test
+    void searchUsers_whenQueryHasWildcards_thenMatchesThemLiterally() throws UserServiceException {
+        UserEntity underscore = repository.save(new UserEntity(null, "a_b@email.com", "first", "last",
+                LocalDate.of(2000, 1, 1), null, null));
+        repository.save(new UserEntity(null, "axb@email.com", "first", "last", LocalDate.of(2000, 1, 1), null, null));
+
+        assertThat(underTest.searchUsers("a_", 10, null).getUsers()).extracting(UserDto::getId).containsExactly(underscore.getId());
+        assertThat(underTest.searchUsers("%", 10, null).getUsers()).isEmpty();
+    }
+
+    @Test
+    void searchUsers_whenQueryIsBlank_thenError() {
+        UserServiceException exception = assertThrows(UserServiceException.class, () -> underTest.searchUsers(" ", 10, null));
+        assertEquals("Query should not be blank", exception.getMessage());
+    }
+
+    @Test
+    void streamUsersByBirthday() throws UserServiceException {
+        UserEntity first = repository.save(new UserEntity(null,
+                "email1@email.com",
+                "first1",
+                "last1",
+                LocalDate.of(2000, 1, 1),
+                "address1",
+                "11111111111"));
+        repository.save(new UserEntity(null,
+                "email2@email.com",
+                "first2",
+                "last2",
+                LocalDate.of(2005, 5, 5),
+                "address2",
+                "22222222222"));
+
+        List<UserDto> actual = new ArrayList<>();
+        underTest.streamUsersByBirthday(LocalDate.of(1999, 1, 1), LocalDate.of(2001, 1, 1), actual::add);
+
+        assertThat(actual).containsExactly(new UserDto(first.getId(),
+                "email1@email.com",
+                "first1",
+                "last1",
+                LocalDate.of(2000, 1, 1),
+                "address1",
+                "11111111111"));
+    }
+
+    @Test
+    void getUser() throws UserServiceException {
+        UserEntity saved = repository.save(new UserEntity(null,
+                "email@test.com",
+                "firstName",
+                "lastName",
+                LocalDate.now().minusYears(21),
+                "address",
+                "+123456789098"));
+
+        UserDto actual = underTest.getUser(saved.getId());
+
+        assertEquals(new UserDto(saved.getId(),
+                "email@test.com",
+                "firstName",
+                "lastName",
+                LocalDate.now().minusYears(21),
+                "address",
+                "+123456789098"), actual);
+    }
+
+    @Test
+    void getUser_whenUserIsAbsent_thenShouldThrowError() {
+        UserServiceException actual = assertThrows(UserServiceException.class, () -> underTest.getUser(2023L));
+
+        assertEquals("User is not found", actual.getMessage());
+    }
+
+    @Test
+    void getUser_whenUserWasUpdatedOrDeleted_thenCachedUserIsRefreshed() throws UserServiceException {
+        UserEntity saved = repository.save(new UserEntity(null,
+                "email@test.com",
+                "firstName",
+                "lastName",
+                LocalDate.now().minusYears(21),
+                "address",
+                "+123456789098"));
+        underTest.getUser(saved.getId());
+
+        underTest.updateSomeUserFields(saved.getId(), new UpdateUserRequest(null,
+                "firstName1",
+                null,
+                null,
+                Optional.empty(),
+                Optional.empty()));
+        assertEquals("firstName1", underTest.getUser(saved.getId()).getFirstName());
+
+        underTest.deleteUser(saved.getId());
+        assertThrows(UserServiceException.class, () -> underTest.getUser(saved.getId()));
+    }
+
+    @Test
+    void updateSomeUserFields_whenExpectedVersionMatches_thenVersionIsIncremented() throws UserServiceException {
+        UserEntity saved = repository.save(new UserEntity(null,
+                "email@test.com",
+                "firstName",
+                "lastName",
+                LocalDate.now().minusYears(21),
+                "address",
+                "+123456789098"));
+
+        UserDto actual = underTest.updateSomeUserFields(saved.getId(), new UpdateUserRequest(null,
+                "firstName1",
+                null,
+                null,
+                Optional.empty(),
+                Optional.empty()), saved.getVersion());
+
+        assertEquals(saved.getVersion() + 1, actual.getVersion());
+        assertEquals(saved.getVersion() + 1, repository.findById(saved.getId()).orElseThrow().getVersion());
+    }
+
+    @Test
+    void updateAllUserFields_whenExpectedVersionIsStale_thenShouldThrowError() throws UserServiceException {
+        UserEntity saved = repository.save(new UserEntity(null,
+                "email@test.com",
+                "firstName",
+                "lastName",
+                LocalDate.now().minusYears(21),
+                "address",
+                "+123456789098"));
+        CreateUserRequest request = new CreateUserRequest("email@test.com",
+                "firstName1",
+                "lastName1",
+                LocalDate.now().minusYears(22),
+                "address1",
+                "+123456777778");
+        underTest.updateAllUserFields(saved.getId(), request, saved.getVersion());
+
+        UserServiceException actual = assertThrows(UserVersionMismatchException.class,
+                () -> underTest.updateAllUserFields(saved.getId(), request, saved.getVersion()));
+
+        assertEquals("User was modified by another request", actual.getMessage());
+        assertEquals(saved.getVersion() + 1, underTest.getUser(saved.getId()).getVersion());
+    }
+
+    private UserEntity saveUser(String email, LocalDate birthDate) {
+        return repository.save(new UserEntity(null, email, "first", "last", birthDate, "address", "11111111111"));
+    }
 
 }
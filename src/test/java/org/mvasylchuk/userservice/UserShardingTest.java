@@ -0,0 +1,341 @@
+package org.mvasylchuk.userservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mvasylchuk.userservice.dto.UpdateUserRequest;
+import org.mvasylchuk.userservice.dto.UserDto;
+import org.mvasylchuk.userservice.dto.UserMultiGetResult;
+import org.mvasylchuk.userservice.dto.UserPage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mvasylchuk.userservice.UserRequests.request;
+
+/**
+ * Two databases of the test server stand in for the shards. Closes its context afterwards, as the shard pools add to
+ * the connections of the cached contexts.
+ */
+@SpringBootTest(properties = {
+        "userService.shards.enabled=true",
+        "userService.shards.urls=" + UserShardingTest.SHARD_0_URL + "," + UserShardingTest.SHARD_1_URL
+})
+@DirtiesContext
+class UserShardingTest {
+    static final String SHARD_0_URL = "jdbc:mariadb://localhost:3306/user-service-test-shard-0?createDatabaseIfNotExist=true";
+    static final String SHARD_1_URL = "jdbc:mariadb://localhost:3306/user-service-test-shard-1?createDatabaseIfNotExist=true";
+    private static final LocalDate BIRTH_DATE = LocalDate.now().minusYears(20);
+
+    @Autowired
+    UserService userService;
+    @Autowired
+    UserShards shards;
+    @Autowired
+    UserShardedStore userShardedStore;
+    @Autowired
+    UserShardTool userShardTool;
+    @Autowired
+    UserController userController;
+    @Autowired
+    UserImportController userImportController;
+    @Autowired
+    UserChangeController userChangeController;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        for (UserShards.Shard shard : shards.getShards()) {
+            JdbcTemplate jdbc = shard.getJdbc().getJdbcTemplate();
+            jdbc.update("DELETE FROM users");
+            jdbc.update("DELETE FROM user_emails");
+            jdbc.update("DELETE FROM user_changes");
+        }
+        jdbcTemplate.update("DELETE FROM users");
+    }
+
+    @Test
+    void createUser_placesUserOnShardOfItsId() throws UserServiceException {
+        UserDto user = userService.createUser(request("email@test.com", BIRTH_DATE));
+
+        UserShards.Shard shard = shards.ofId(user.getId());
+        assertEquals(1, count(shard, "SELECT COUNT(*) FROM users WHERE id = " + user.getId()));
+        assertEquals(1, count(shard, "SELECT COUNT(*) FROM user_changes WHERE user_id = " + user.getId()));
+        assertEquals(1, count(shards.ofEmail("email@test.com"), "SELECT COUNT(*) FROM user_emails WHERE user_id = " + user.getId()));
+        assertEquals(user, userService.getUser(user.getId()));
+        assertEquals(0, count(jdbcTemplate, "SELECT COUNT(*) FROM users"));
+    }
+
+    @Test
+    void createUser_whenEmailIsClaimed_thenError() throws UserServiceException {
+        userService.createUser(request("email@test.com", BIRTH_DATE));
+
+        UserServiceException e = assertThrows(UserServiceException.class,
+                () -> userService.createUser(request("EMAIL@test.com", BIRTH_DATE)));
+        assertEquals(UserService.EMAIL_EXISTS_ERROR, e.getMessage());
+    }
+
+    @Test
+    void createUser_whenClaimIsStale_thenTakesItOver() throws UserServiceException {
+        claim("stale@test.com", 42, LocalDateTime.now().minusHours(1));
+        claim("recent@test.com", 43, LocalDateTime.now());
+
+        UserDto user = userService.createUser(request("stale@test.com", BIRTH_DATE));
+        assertEquals(1, count(shards.ofEmail("stale@test.com"), "SELECT COUNT(*) FROM user_emails WHERE user_id = " + user.getId()));
+        UserServiceException e = assertThrows(UserServiceException.class,
+                () -> userService.createUser(request("recent@test.com", BIRTH_DATE)));
+        assertEquals(UserService.EMAIL_EXISTS_ERROR, e.getMessage());
+    }
+
+    @Test
+    void updateSomeUserFields_whenEmailChanges_thenOldEmailIsReleased() throws UserServiceException {
+        UserDto user = userService.createUser(request("old@test.com", BIRTH_DATE));
+        UpdateUserRequest changes = new UpdateUserRequest("new@test.com", null, null, null, null, null);
+
+        UserDto updated = userService.updateSomeUserFields(user.getId(), changes, 0L);
+
+        assertEquals("new@test.com", updated.getEmail());
+        assertEquals(1L, updated.getVersion());
+        assertDoesNotThrow(() -> userService.createUser(request("old@test.com", BIRTH_DATE)));
+        UserServiceException e = assertThrows(UserServiceException.class,
+                () -> userService.createUser(request("new@test.com", BIRTH_DATE)));
+        assertEquals(UserService.EMAIL_EXISTS_ERROR, e.getMessage());
+    }
+
+    @Test
+    void updateAllUserFields_whenVersionIsStale_thenNewEmailIsReleased() throws UserServiceException {
+        UserDto user = userService.createUser(request("old@test.com", BIRTH_DATE));
+
+        assertThrows(UserVersionMismatchException.class,
+                () -> userService.updateAllUserFields(user.getId(), request("new@test.com", BIRTH_DATE), 5L));
+
+        assertEquals("old@test.com", userService.getUser(user.getId()).getEmail());
+        assertDoesNotThrow(() -> userService.createUser(request("new@test.com", BIRTH_DATE)));
+    }
+
+    @Test
+    void deleteUser_releasesEmail() throws UserServiceException {
+        UserDto user = userService.createUser(request("email@test.com", BIRTH_DATE));
+
+        userService.deleteUser(user.getId());
+
+        UserServiceException e = assertThrows(UserServiceException.class, () -> userService.getUser(user.getId()));
+        assertEquals(UserService.NOT_FOUND_ERROR, e.getMessage());
+        assertEquals(List.of("CREATED", "DELETED"), shards.ofId(user.getId()).getJdbc().getJdbcTemplate()
+                .queryForList("SELECT type FROM user_changes WHERE user_id = ? ORDER BY id", String.class, user.getId()));
+        assertDoesNotThrow(() -> userService.createUser(request("email@test.com", BIRTH_DATE)));
+    }
+
+    @Test
+    void getUsers_readsUsersOfAllShards() throws UserServiceException {
+        UserDto first = new UserDto(1L << UserShards.BUCKET_BITS | 7, "first@test.com", "firstName", "lastName", BIRTH_DATE, null, null, 0L);
+        UserDto second = new UserDto(1L << UserShards.BUCKET_BITS | 700, "second@test.com", "firstName", "lastName", BIRTH_DATE, null, null, 0L);
+        userShardedStore.copyUsers(List.of(first, second));
+        long absent = 2L << UserShards.BUCKET_BITS | 7;
+
+        UserMultiGetResult actual = userService.getUsers(List.of(second.getId(), absent, first.getId()));
+
+        assertEquals(List.of(second, first), actual.getUsers());
+        assertEquals(List.of(absent), actual.getMissingIds());
+    }
+
+    @Test
+    void searchUsersByBirthday_mergesShardsInBirthdayOrder() throws UserServiceException {
+        List<UserDto> users = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            // even users in the buckets of shard 0, odd ones in the buckets of shard 1
+            long id = (long) (100 - i) << UserShards.BUCKET_BITS | (i % 2 == 0 ? 7 : 700);
+            users.add(new UserDto(id, "user" + i + "@test.com", "firstName", "lastName", BIRTH_DATE.minusDays(i % 5), null, null, 0L));
+        }
+        userShardedStore.copyUsers(users);
+        users.sort(Comparator.comparing(UserDto::getBirthDate).thenComparing(UserDto::getId));
+
+        assertEquals(users, userService.searchUsersByBirthday(BIRTH_DATE.minusDays(4), BIRTH_DATE));
+
+        List<UserDto> streamed = new ArrayList<>();
+        userService.streamUsersByBirthday(BIRTH_DATE.minusDays(4), BIRTH_DATE, streamed::add);
+        assertEquals(users, streamed);
+
+        List<UserDto> paged = new ArrayList<>();
+        String next = null;
+        do {
+            UserPage page = userService.searchUsersByBirthday(BIRTH_DATE.minusDays(4), BIRTH_DATE, 5, next);
+            paged.addAll(page.getUsers());
+            next = page.getNext();
+        } while (next != null);
+        assertEquals(users, paged);
+    }
+
+    @Test
+    void searchUpcomingBirthdays_mergesShardsInBirthdayOrder() throws UserServiceException {
+        List<UserDto> users = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            long id = (long) (100 - i) << UserShards.BUCKET_BITS | (i % 2 == 0 ? 7 : 700);
+            // December 29 to January 3 of years apart
+            users.add(new UserDto(id, "user" + i + "@test.com", "firstName", "lastName",
+                    LocalDate.of(1980 + i, 12, 29).plusDays(i % 6), null, null, 0L));
+        }
+        userShardedStore.copyUsers(users);
+        users.sort(Comparator.comparing((UserDto user) -> user.getBirthDate().getMonthValue() == 1)
+                .thenComparing(user -> BirthMonthDayCursor.monthDay(user.getBirthDate()))
+                .thenComparing(UserDto::getId));
+
+        List<UserDto> paged = new ArrayList<>();
+        String next = null;
+        do {
+            UserPage page = userService.searchUpcomingBirthdays(LocalDate.of(2025, 12, 29), 6, 5, next);
+            paged.addAll(page.getUsers());
+            next = page.getNext();
+        } while (next != null);
+        assertEquals(users, paged);
+    }
+
+    @Test
+    void searchUsers_mergesShardsInRankOrder() throws UserServiceException {
+        List<UserDto> users = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            long id = (long) (100 - i) << UserShards.BUCKET_BITS | (i % 2 == 0 ? 7 : 700);
+            // every third user matches by email, the others by last name
+            String email = (i % 3 == 0 ? "smith" : "user") + i + "@test.com";
+            users.add(new UserDto(id, email, "firstName", "Smith" + (i % 4), BIRTH_DATE, null, null, 0L));
+        }
+        userShardedStore.copyUsers(users);
+        users.sort(Comparator.comparing((UserDto user) -> !user.getEmail().startsWith("smith"))
+                .thenComparing(user -> user.getEmail().startsWith("smith") ? user.getEmail() : user.getLastName().toLowerCase())
+                .thenComparing(UserDto::getId));
+
+        List<UserDto> paged = new ArrayList<>();
+        String next = null;
+        do {
+            UserPage page = userService.searchUsers("Smi", 5, next);
+            paged.addAll(page.getUsers());
+            next = page.getNext();
+        } while (next != null);
+        assertEquals(users, paged);
+    }
+
+    @Test
+    void searchUsersByBirthday_whenShardThreadsAreTaken_thenBusy() throws Exception {
+        userService.createUser(request("email@test.com", BIRTH_DATE));
+        CountDownLatch release = new CountDownLatch(1);
+        int taken = 0;
+        try {
+            while (true) {
+                shards.getExecutor().execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                taken++;
+            }
+        } catch (RejectedExecutionException e) {
+            assertEquals(2 * 10, taken);
+            assertThrows(UserServiceBusyException.class, () -> userService.searchUsersByBirthday(BIRTH_DATE, BIRTH_DATE));
+        } finally {
+            release.countDown();
+        }
+
+        // the threads take queries again once they are done with the blocking tasks
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try {
+                assertEquals(1, userService.searchUsersByBirthday(BIRTH_DATE, BIRTH_DATE).size());
+                break;
+            } catch (UserServiceBusyException e) {
+                assertTrue(System.nanoTime() < deadline, "shard threads were not released in time");
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    @Test
+    void backfill_copiesUsersToShards() throws UserServiceException {
+        jdbcTemplate.update("INSERT INTO users (id, email, first_name, last_name, birth_date, version) VALUES " +
+                "(100000, 'first@test.com', 'firstName', 'lastName', ?, 3), " +
+                "(100513, 'second@test.com', 'firstName', 'lastName', ?, 0)", BIRTH_DATE, BIRTH_DATE);
+
+        assertEquals(2, userShardTool.backfill());
+
+        assertEquals(3L, userService.getUser(100000L).getVersion());
+        assertEquals("second@test.com", userService.getUser(100513L).getEmail());
+        assertThrows(UserServiceException.class, () -> userService.createUser(request("first@test.com", BIRTH_DATE)));
+        assertThat(userService.createUser(request("third@test.com", BIRTH_DATE)).getId()).isGreaterThan(100513L);
+    }
+
+    @Test
+    void reshard_movesUsersToShardThatOwnsThem() throws UserServiceException {
+        long id = 5L << UserShards.BUCKET_BITS | 700;
+        UserShards.Shard owner = shards.ofId(id);
+        UserShards.Shard other = shards.getShards().get(1 - owner.getIndex());
+        other.getJdbc().getJdbcTemplate().update("INSERT INTO users (id, email, first_name, last_name, birth_date, version) " +
+                "VALUES (?, 'moved@test.com', 'firstName', 'lastName', ?, 0)", id, BIRTH_DATE);
+        UserShards.Shard emailOwner = shards.ofEmail("moved@test.com");
+        shards.getShards().get(1 - emailOwner.getIndex()).getJdbc().getJdbcTemplate()
+                .update("INSERT INTO user_emails (email, user_id, claimed_at) VALUES ('moved@test.com', ?, ?)", id, LocalDateTime.now());
+
+        assertEquals(1, userShardTool.reshard());
+
+        assertEquals(0, count(other, "SELECT COUNT(*) FROM users"));
+        assertEquals("moved@test.com", userService.getUser(id).getEmail());
+        for (UserShards.Shard shard : shards.getShards()) {
+            assertEquals(shard == emailOwner ? 1 : 0, count(shard, "SELECT COUNT(*) FROM user_emails"));
+        }
+    }
+
+    @Test
+    void reshard_alignsSequences() throws UserServiceException {
+        // issued by the previous owner of the bucket, far ahead of the sequence of the new one
+        long sequence = 1_000_000;
+        long id = sequence << UserShards.BUCKET_BITS | 700;
+        UserShards.Shard other = shards.getShards().get(1 - shards.ofId(id).getIndex());
+        other.getJdbc().getJdbcTemplate().update("INSERT INTO users (id, email, first_name, last_name, birth_date, version) " +
+                "VALUES (?, 'moved@test.com', 'firstName', 'lastName', ?, 0)", id, BIRTH_DATE);
+
+        userShardTool.reshard();
+
+        for (int i = 0; i < 5; i++) {
+            UserDto user = userService.createUser(request("user" + i + "@test.com", BIRTH_DATE));
+            assertThat(user.getId() >> UserShards.BUCKET_BITS).isGreaterThan(sequence);
+        }
+    }
+
+    @Test
+    void unshardedOperations_areRejected() {
+        assertThrows(UserServiceUnsupportedException.class, () -> userController.createBatch(List.of(request("email@test.com", BIRTH_DATE))));
+        assertThrows(UserServiceUnsupportedException.class, () -> userController.deleteByIds(List.of(1L)));
+        assertThrows(UserServiceUnsupportedException.class, () -> userController.deleteByBirthday(BIRTH_DATE, BIRTH_DATE));
+        assertThrows(UserServiceUnsupportedException.class, () -> userImportController.start("application/x-ndjson",
+                new ByteArrayInputStream(new byte[0])));
+        assertThrows(UserServiceUnsupportedException.class, () -> userChangeController.poll(0, 10, 0));
+        assertEquals(0, count(jdbcTemplate, "SELECT COUNT(*) FROM users"));
+    }
+
+    private void claim(String email, long userId, LocalDateTime claimedAt) {
+        shards.ofEmail(email).getJdbc().update("INSERT INTO user_emails (email, user_id, claimed_at) VALUES (:email, :userId, :claimedAt)",
+                Map.of("email", email, "userId", userId, "claimedAt", claimedAt));
+    }
+
+    private static long count(UserShards.Shard shard, String sql) {
+        return count(shard.getJdbc().getJdbcTemplate(), sql);
+    }
+
+    private static long count(JdbcTemplate jdbc, String sql) {
+        return jdbc.queryForObject(sql, Long.class);
+    }
+}